@@ -0,0 +1,106 @@
+package com.genielog.tools.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.genielog.tools.Concurrency;
+import com.genielog.tools.MapRedOperator;
+
+/**
+ * Throughput of {@link Concurrency#parallel} across chunk sizes and thread counts, for a summing operator and the
+ * built-in operator factories, with a parallel stream as baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+	@Param({ "1000000" })
+	public int size;
+
+	@Param({ "100", "1000", "10000" })
+	public int chunkSize;
+
+	@Param({ "1", "2", "4", "8" })
+	public int nbThreads;
+
+	private List<Integer> items;
+	private Concurrency executor;
+
+	private MapRedOperator<Integer, Long> sum;
+	private MapRedOperator<Integer, Integer> findAny;
+	private MapRedOperator<Integer, List<Integer>> findAll;
+	private MapRedOperator<Integer, Integer> forEach;
+	private MapRedOperator<Integer, List<Long>> maper;
+
+	@Setup
+	public void setUp() {
+		items = IntStream.range(0, size).boxed().collect(Collectors.toList());
+		executor = new Concurrency("bench", nbThreads);
+
+		int last = size - 1;
+		sum = new MapRedOperator<>("sum", null, (Integer x) -> (long) x, Long::sum, () -> 0L);
+		findAny = MapRedOperator.findAny((Integer x) -> x == last);
+		findAll = MapRedOperator.findAll((Integer x) -> x % 100 == 0);
+		forEach = MapRedOperator.forEach("forEach", (Integer x) -> x % 2 == 0, (Integer x) -> {
+		});
+		maper = MapRedOperator.maper("maper", (Integer x) -> x % 10 == 0, (Integer x) -> (long) x * x);
+	}
+
+	@Benchmark
+	public long parallelSum() {
+		return executor.parallel(items.stream(), chunkSize, sum);
+	}
+
+	@Benchmark
+	public long parallelStreamSum() {
+		return items.parallelStream().mapToLong(x -> (long) x).sum();
+	}
+
+	@Benchmark
+	public Integer parallelFindAny() {
+		return executor.parallel(items.stream(), chunkSize, findAny);
+	}
+
+	@Benchmark
+	public List<Integer> parallelFindAll() {
+		return executor.parallel(items.stream(), chunkSize, findAll);
+	}
+
+	@Benchmark
+	public List<Integer> parallelStreamFindAll() {
+		return items.parallelStream().filter(x -> x % 100 == 0).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public Integer parallelForEach() {
+		return executor.parallel(items.stream(), chunkSize, forEach);
+	}
+
+	@Benchmark
+	public List<Long> parallelMaper() {
+		return executor.parallel(items.stream(), chunkSize, maper);
+	}
+
+	@Benchmark
+	public List<Long> parallelStreamMaper() {
+		return items.parallelStream().filter(x -> x % 10 == 0).map(x -> (long) x * x).collect(Collectors.toList());
+	}
+}
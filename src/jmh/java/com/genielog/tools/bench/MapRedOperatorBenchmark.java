@@ -0,0 +1,93 @@
+package com.genielog.tools.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.genielog.tools.MapRedOperator;
+
+/**
+ * Throughput of {@link MapRedOperator#exec} on a single thread, for a summing operator and the built-in operator
+ * factories, with a sequential stream as baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapRedOperatorBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private List<Integer> items;
+
+	private MapRedOperator<Integer, Long> sum;
+	private MapRedOperator<Integer, Integer> findAny;
+	private MapRedOperator<Integer, List<Integer>> findAll;
+	private MapRedOperator<Integer, Integer> forEach;
+	private MapRedOperator<Integer, List<Long>> maper;
+
+	@Setup
+	public void setUp() {
+		items = IntStream.range(0, size).boxed().collect(Collectors.toList());
+
+		int last = size - 1;
+		sum = new MapRedOperator<>("sum", null, (Integer x) -> (long) x, Long::sum, () -> 0L);
+		findAny = MapRedOperator.findAny((Integer x) -> x == last);
+		findAll = MapRedOperator.findAll((Integer x) -> x % 100 == 0);
+		forEach = MapRedOperator.forEach("forEach", (Integer x) -> x % 2 == 0, (Integer x) -> {
+		});
+		maper = MapRedOperator.maper("maper", (Integer x) -> x % 10 == 0, (Integer x) -> (long) x * x);
+	}
+
+	@Benchmark
+	public long execSum() {
+		return sum.exec(items.stream());
+	}
+
+	@Benchmark
+	public long streamSum() {
+		return items.stream().mapToLong(x -> (long) x).sum();
+	}
+
+	@Benchmark
+	public Integer execFindAny() {
+		findAny.init();
+		return findAny.exec(items.stream());
+	}
+
+	@Benchmark
+	public List<Integer> execFindAll() {
+		return findAll.exec(items.stream());
+	}
+
+	@Benchmark
+	public Integer execForEach() {
+		return forEach.exec(items.stream());
+	}
+
+	@Benchmark
+	public List<Long> execMaper() {
+		return maper.exec(items.stream());
+	}
+
+	@Benchmark
+	public List<Long> streamMaper() {
+		return items.stream().filter(x -> x % 10 == 0).map(x -> (long) x * x).collect(Collectors.toList());
+	}
+}
@@ -4,14 +4,37 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -20,6 +43,7 @@ import com.genielog.tools.Chrono;
 import com.genielog.tools.JsonUtils;
 import com.genielog.tools.Tools;
 import com.genielog.tools.parameters.AttributeWrapper;
+import com.google.common.hash.Hashing;
 
 /**
  * A class for implementing a Checker. <br>
@@ -44,6 +68,18 @@ public abstract class AChecker<S, D extends ADefect> extends AttributeWrapper im
 
 	private static final long serialVersionUID = -7061448365081429765L;
 
+	// Upper bound of the adaptive batch size.
+	private static final int MAX_BATCH_SIZE = 10000;
+
+	// Maximum number of threads running the checks with a timeout, the next checks waiting for one of them.
+	private static final int MAX_WATCHDOG_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+
+	// States of a check run by a watchdog thread.
+	private static final int PENDING = 0;
+	private static final int RUNNING = 1;
+	private static final int DONE = 2;
+	private static final int ABANDONED = 3;
+
 	protected transient Logger _logger;
 
 	protected transient AConfig<? extends AChecker<S, D>> _config;
@@ -60,11 +96,91 @@ public abstract class AChecker<S, D extends ADefect> extends AttributeWrapper im
 	@JsonProperty("version")
 	private String _version;
 
+	// Number of subjects passed at once to doCheckBatch(), 1 for checking them one by one.
+	@JsonProperty("batch-size")
+	private int _batchSize = 1;
+
+	// Expected duration of a batch in milliseconds, for adapting the batch size, or 0 for a fixed batch size.
+	@JsonProperty("batch-target-ms")
+	private long _batchTarget = 0L;
+
+	// Maximum duration of the check of a subject in milliseconds, or 0 for no limit.
+	@JsonProperty("subject-timeout-ms")
+	private long _subjectTimeout = 0L;
+
+	// Number of timeouts after which the checker is disabled for the rest of the check, or 0 to never disable it.
+	@JsonProperty("max-timeouts")
+	private int _maxTimeouts = 3;
+
+	// Names of the checkers whose defects are consumed by this one.
+	@JsonProperty("depends-on")
+	@JsonInclude(JsonInclude.Include.NON_EMPTY)
+	private List<String> _dependsOn = new ArrayList<>();
+
 	@JsonIgnore
 	public AtomicLong _nbCheckedSubjects = new AtomicLong();
 
 	@JsonIgnore
-	public transient Chrono _checksDuration = new Chrono();
+	protected CheckerStats _stats = new CheckerStats();
+
+	/**
+	 * The cumulated duration of the checks, read from the statistics of the checks: it can't be started nor stopped.
+	 *
+	 * @deprecated Use getDuration() or getStats().
+	 */
+	@Deprecated
+	@JsonIgnore
+	public transient Chrono _checksDuration = new Chrono() {
+
+		@Override
+		public long elapsed() {
+			return _stats.getDuration();
+		}
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public long stop() {
+			return elapsed();
+		}
+
+		@Override
+		public long pause() {
+			return elapsed();
+		}
+
+		@Override
+		public void resume() {
+		}
+	};
+
+	@JsonIgnore
+	protected transient DefectCache _defectCache = null;
+
+	// Size of the next batch, adapted to the duration of the previous ones.
+	private transient volatile int _nextBatchSize = 1;
+
+	// Set when the checker is disabled after too many timeouts or an abandoned check, until the next check.
+	private transient volatile boolean _tripped = false;
+
+	// Channels from the producers of this checker, by name, and to its consumers, during an audit.
+	private transient Map<String, DefectChannel> _upstream = new ConcurrentHashMap<>();
+	private transient List<DefectChannel> _downstream = new CopyOnWriteArrayList<>();
+
+	// Plan for checking a sample of the subjects only, and the estimate of the defects of the last check.
+	private transient SamplingPlan _samplingPlan = null;
+	private transient volatile SampleEstimate _sampleEstimate = null;
+
+	// Profile of the checks, when profiling an audit.
+	private transient volatile CheckerProfile _profile = null;
+
+	// Number of checks abandoned after a timeout and still running.
+	private transient AtomicInteger _nbAbandoned = new AtomicInteger();
+
+	// Threads running the checks with a timeout, shared by all the checkers.
+	private static ExecutorService sWatchdogPool = null;
 	//
 	// ******************************************************************************************************************
 	//
@@ -144,57 +260,634 @@ public abstract class AChecker<S, D extends ADefect> extends AttributeWrapper im
 
 	protected abstract D doCheck(S subject);
 
+	/**
+	 * Returns true if doCheck() can be called concurrently on different subjects. Only such checkers have their subjects
+	 * checked in parallel, see check(boolean).
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
 	/** Execute the verification of the subject if it is valid and generate a defect if necessary or null */
 	public final Stream<D> check() {
+		return check(false);
+	}
+
+	/**
+	 * Same as check(), with the subjects checked in parallel if requested and the checker is thread-safe. The defects
+	 * are then produced in no particular order.
+	 */
+	public final Stream<D> check(boolean parallel) {
+
+		begin();
+
+		Stream<? extends S> subjects = getSubjects();
+
+		if (subjects == null) {
+			return Stream.empty();
+		}
+
+		if (parallel) {
+			if (isThreadSafe()) {
+				subjects = subjects.parallel();
+			} else {
+				_logger.debug("Checker {} is not thread-safe, its subjects are checked sequentially.", getName());
+			}
+		}
+
+		if (_samplingPlan != null) {
+			SamplingPlan.Sampler sampler = _samplingPlan.newSampler();
+			_sampleEstimate = new SampleEstimate(sampler);
+			subjects = sampler.sample(subjects);
+		}
+
+		Stream<D> defects;
+		if (isBatched()) {
+			defects = checkBatches(subjects.filter(this::isValidSubject), parallel && isThreadSafe());
+		} else {
+			// A filter rather than a takeWhile, which would buffer all the subjects of an ordered parallel stream.
+			defects = subjects
+					.filter(this::isValidSubject)
+					.filter(subject -> !_tripped)
+					.map(this::checkSubject);
+		}
+
+		return defects
+				.filter(Objects::nonNull)
+				.peek(this::produced)
+				.onClose(this::end);
+	}
+
+	// ******************************************************************************************************************
+	// Batch check
+	// ******************************************************************************************************************
+
+	/**
+	 * Check a batch of subjects at once, for checkers sharing some work between subjects. Returns a list with, for each
+	 * subject in the same order, its defect or null. By default, each subject is checked by doCheck().
+	 */
+	protected List<D> doCheckBatch(List<S> subjects) {
+		List<D> result = new ArrayList<>(subjects.size());
+		for (S subject : subjects) {
+			result.add(doCheck(subject));
+		}
+		return result;
+	}
+
+	/** Returns the number of subjects checked at once by doCheckBatch(), or the initial one if adaptive. */
+	public int getBatchSize() {
+		return _batchSize;
+	}
+
+	public void setBatchSize(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Batch size must be strictly positive : " + size);
+		}
+		_batchSize = size;
+	}
+
+	/**
+	 * Adapt the size of the batches so each one takes about the given duration in milliseconds, starting from the batch
+	 * size, or keep a fixed batch size with 0.
+	 */
+	public void setBatchTarget(long milliseconds) {
+		if (milliseconds < 0) {
+			throw new IllegalArgumentException("Batch duration can't be negative : " + milliseconds);
+		}
+		_batchTarget = milliseconds;
+	}
+
+	public long getBatchTarget() {
+		return _batchTarget;
+	}
+
+	/** Returns true if the subjects are checked by batches with doCheckBatch(). */
+	public boolean isBatched() {
+		return (_batchSize > 1) || (_batchTarget > 0);
+	}
+
+	/**
+	 * Check the subjects by batches, each one sized when it is pulled for being checked. In parallel, each worker pulls
+	 * its next batch once it has checked the previous one, instead of the stream splitting many batches ahead of their
+	 * checks. No batch is pulled anymore once the checker is disabled.
+	 */
+	private Stream<D> checkBatches(Stream<? extends S> subjects, boolean parallel) {
+		_nextBatchSize = Integer.max(1, _batchSize);
+		Iterator<? extends S> iterator = subjects.iterator();
+		Supplier<List<S>> next = () -> {
+			synchronized (iterator) {
+				int size = _tripped ? 0 : _nextBatchSize;
+				List<S> batch = new ArrayList<>(size);
+				while ((batch.size() < size) && iterator.hasNext()) {
+					batch.add(iterator.next());
+				}
+				return batch;
+			}
+		};
+		Supplier<Stream<D>> worker = () -> Stream.generate(next)
+				.takeWhile(batch -> !batch.isEmpty())
+				.flatMap(batch -> checkBatch(batch).stream());
+		Stream<D> result = parallel
+				? IntStream.range(0, Runtime.getRuntime().availableProcessors()).parallel().boxed().flatMap(i -> worker.get())
+				: worker.get();
+		return result.onClose(subjects::close);
+	}
+
+	/** Check a batch of valid subjects, recording the statistics of the checks. */
+	@SuppressWarnings("unchecked")
+	List<D> checkBatch(List<S> batch) {
+
+		List<D> result = new ArrayList<>(batch.size());
+		List<S> toCheck = batch;
+		List<String> keys = null;
+		List<String> fingerprints = null;
+
+		// Replay the defects of the subjects unchanged since the previous check.
+		if (_defectCache != null) {
+			toCheck = new ArrayList<>(batch.size());
+			keys = new ArrayList<>(batch.size());
+			fingerprints = new ArrayList<>(batch.size());
+			for (S subject : batch) {
+				String key = getSubjectKey(subject);
+				String fingerprint = getSubjectFingerprint(subject);
+				DefectCache.Entry cached = (fingerprint == null) ? null : _defectCache.lookup(key, fingerprint);
+				if (cached != null) {
+					_nbCheckedSubjects.incrementAndGet();
+					_stats.recordCached();
+					result.add((D) cached.defect);
+				} else {
+					toCheck.add(subject);
+					keys.add(key);
+					fingerprints.add(fingerprint);
+				}
+			}
+		}
+
+		if (toCheck.isEmpty()) {
+			return result;
+		}
+
+		List<D> defects = null;
+		long start = System.nanoTime();
+		try {
+			if (_subjectTimeout > 0) {
+				List<S> subjects = toCheck;
+				defects = callWithTimeout(() -> doCheckBatch(subjects), _subjectTimeout * subjects.size());
+			} else {
+				defects = doCheckBatch(toCheck);
+			}
+			if ((defects == null) || (defects.size() != toCheck.size())) {
+				throw new IllegalStateException("Batch check returned " + ((defects == null) ? "null" : defects.size())
+						+ " results for " + toCheck.size() + " subjects");
+			}
+		} catch (Exception e) {
+			// Check the subjects one by one, to isolate the failing or slow ones.
+			if (e instanceof TimeoutException) {
+				_logger.warn("Checker {} timed out on a batch of {} subjects", this, toCheck.size());
+				recordTimeout();
+				if (e instanceof AbandonedException) {
+					// Checking its subjects again would check them twice, concurrently with the abandoned batch.
+					return result;
+				}
+			} else {
+				_logger.error("Checker {} failed on a batch of {} subjects because of {}", this, toCheck.size(),
+						Tools.getExceptionMessages(e));
+			}
+			for (int i = 0; (i < toCheck.size()) && !_tripped; i++) {
+				result.add(checkSubject(toCheck.get(i)));
+			}
+			return result;
+		}
+		long duration = System.nanoTime() - start;
+
+		_nbCheckedSubjects.addAndGet(toCheck.size());
+		CheckerProfile profile = _profile;
+		if (profile != null) {
+			profile.recordBatch(this, toCheck, duration);
+		}
+		for (int i = 0; i < toCheck.size(); i++) {
+			_stats.record(duration / toCheck.size(), false);
+			if ((fingerprints != null) && (fingerprints.get(i) != null)) {
+				_defectCache.put(keys.get(i), fingerprints.get(i), defects.get(i));
+			}
+		}
+		result.addAll(defects);
+
+		if (_batchTarget > 0) {
+			adaptBatchSize(toCheck.size(), duration);
+		}
+		return result;
+	}
+
+	/** Move the size of the next batches toward the one expected to last the target duration. */
+	private void adaptBatchSize(int size, long duration) {
+		double nanosPerSubject = Double.max(1.0, (double) duration / size);
+		double target = Double.min(MAX_BATCH_SIZE, Double.max(1.0, _batchTarget * 1e6 / nanosPerSubject));
+		_nextBatchSize = (int) Math.round((_nextBatchSize + target) / 2);
+	}
+
+	// ******************************************************************************************************************
+	// Timeouts
+	// ******************************************************************************************************************
+
+	/** Returns the maximum duration of the check of a subject in milliseconds, or 0 for no limit. */
+	public long getSubjectTimeout() {
+		return _subjectTimeout;
+	}
+
+	/**
+	 * Set the maximum duration of the check of a subject in milliseconds, or 0 for no limit. With a limit, doCheck() is
+	 * called from a watchdog thread and interrupted when it lasts longer. A check ignoring interruptions is abandoned
+	 * and keeps running in the background: a checker which isn't thread-safe is then disabled, so doCheck() is never
+	 * called concurrently. The watchdog threads are bounded, so when all of them run abandoned checks, the next checks
+	 * wait for one of them and may time out while waiting.
+	 */
+	public void setSubjectTimeout(long milliseconds) {
+		if (milliseconds < 0) {
+			throw new IllegalArgumentException("Subject timeout can't be negative : " + milliseconds);
+		}
+		_subjectTimeout = milliseconds;
+	}
+
+	public int getMaxTimeouts() {
+		return _maxTimeouts;
+	}
+
+	/** Set the number of timeouts after which the checker is disabled for the rest of the check, or 0 for never. */
+	public void setMaxTimeouts(int maxTimeouts) {
+		if (maxTimeouts < 0) {
+			throw new IllegalArgumentException("Maximum number of timeouts can't be negative : " + maxTimeouts);
+		}
+		_maxTimeouts = maxTimeouts;
+	}
+
+	/** Returns true if the checker was disabled during the last check because of its timeouts. */
+	public boolean isTripped() {
+		return _tripped;
+	}
+
+	/** Returns the defect reported for a subject whose check timed out, or null to only count the timeout. */
+	protected D makeTimeoutDefect(S subject, long timeout) {
+		return null;
+	}
+
+	/** Returns the number of checks abandoned after a timeout, which are still running. */
+	public int getNbAbandoned() {
+		return _nbAbandoned.get();
+	}
+
+	private static synchronized ExecutorService getWatchdogPool() {
+		if (sWatchdogPool == null) {
+			AtomicLong nbThreads = new AtomicLong();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_WATCHDOG_THREADS, MAX_WATCHDOG_THREADS, 60L,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+						Thread result = new Thread(task, "checker-watchdog-" + nbThreads.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					});
+			pool.allowCoreThreadTimeOut(true);
+			sWatchdogPool = pool;
+		}
+		return sWatchdogPool;
+	}
+
+	/** The timeout of a check which ignored its interruption and is still running. */
+	private static class AbandonedException extends TimeoutException {
+
+		private static final long serialVersionUID = 3326571807014404593L;
+
+		AbandonedException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Run a task from a watchdog thread, and interrupt it if it doesn't complete in time. A task still running after the
+	 * subject timeout following its interruption is abandoned, see {@link AbandonedException}.
+	 */
+	private <T> T callWithTimeout(Callable<T> task, long timeout) throws Exception {
+		AtomicInteger state = new AtomicInteger(PENDING);
+		CountDownLatch stopped = new CountDownLatch(1);
+		Future<T> future = getWatchdogPool().submit(() -> {
+			if (!state.compareAndSet(PENDING, RUNNING)) {
+				return null;
+			}
+			try {
+				return task.call();
+			} finally {
+				if (!state.compareAndSet(RUNNING, DONE)) {
+					_nbAbandoned.decrementAndGet();
+				}
+				stopped.countDown();
+			}
+		});
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} catch (InterruptedException | TimeoutException e) {
+			future.cancel(true);
+			// A task still waiting for a thread is never run.
+			if (!state.compareAndSet(PENDING, DONE) && !stopped.await(_subjectTimeout, TimeUnit.MILLISECONDS)
+					&& abandon(state)) {
+				if (e instanceof TimeoutException) {
+					throw new AbandonedException("Check abandoned after " + timeout + " ms");
+				}
+			}
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Count a check still running after its interruption until it stops, disabling a checker not thread-safe. Returns
+	 * false if the check stopped meanwhile.
+	 */
+	private boolean abandon(AtomicInteger state) {
+		_nbAbandoned.incrementAndGet();
+		if (!state.compareAndSet(RUNNING, ABANDONED)) {
+			_nbAbandoned.decrementAndGet();
+			return false;
+		}
+		if (!isThreadSafe()) {
+			trip("because its abandoned check is still running");
+		}
+		return true;
+	}
+
+	/** Count a timeout, and disable the checker once it reaches the maximum number of timeouts. */
+	private void recordTimeout() {
+		_stats.recordTimeout();
+		if ((_maxTimeouts > 0) && (_stats.getNbTimeouts() >= _maxTimeouts)) {
+			trip("after " + _stats.getNbTimeouts() + " timeouts");
+		}
+	}
+
+	/** Disable the checker for the rest of the check. */
+	private synchronized void trip(String reason) {
+		if (!_tripped) {
+			_tripped = true;
+			_logger.error("Checker {} disabled {}", this, reason);
+		}
+	}
+
+	/** Returns the defect of a subject whose check timed out. */
+	private D timeout(S subject) {
+		_logger.warn("Checker {} timed out after {} ms on {}", this, _subjectTimeout, subject);
+		recordTimeout();
+		return makeTimeoutDefect(subject, _subjectTimeout);
+	}
+
+	// ******************************************************************************************************************
+	// Dependencies
+	// ******************************************************************************************************************
+
+	/** Returns the names of the checkers this one depends on, see CheckerGraph. */
+	public List<String> getDependencies() {
+		return Collections.unmodifiableList(_dependsOn);
+	}
+
+	public void setDependencies(String... names) {
+		_dependsOn = new ArrayList<>(Arrays.asList(names));
+	}
+
+	/**
+	 * Returns the defects and artifacts published by one of the producers of this checker during an audit. They are
+	 * streamed while the producer is running, so the stream waits for the next ones until the producer terminates.
+	 */
+	protected Stream<Object> getUpstream(String producer) {
+		DefectChannel channel = _upstream.get(producer);
+		if (channel == null) {
+			throw new IllegalStateException("Checker " + this + " is not connected to producer " + producer);
+		}
+		return channel.stream();
+	}
+
+	/** Publish an artifact to the checkers depending on this one. The defects of the checker are published anyway. */
+	protected void publish(Object artifact) {
+		for (DefectChannel channel : _downstream) {
+			channel.publish(artifact);
+		}
+	}
+
+	/** Publish a defect of the checker, and account for it in the estimate of a sampled check. */
+	void produced(D defect) {
+		SampleEstimate estimate = _sampleEstimate;
+		if (estimate != null) {
+			estimate.recordDefect(defect.subject());
+		}
+		publish(defect);
+	}
+
+	/** Connect this checker, as a consumer, to one of its producers. */
+	void connect(AChecker<?, ?> producer, DefectChannel channel) {
+		_upstream.put(producer.getName(), channel);
+		producer._downstream.add(channel);
+	}
+
+	/** Close the channels to the consumers of this checker, with the reason why it failed or null. */
+	void closeDownstream(String error) {
+		for (DefectChannel channel : _downstream) {
+			channel.close(error);
+		}
+	}
+
+	/** Remove the channels to the producers and consumers of this checker, at the end of an audit. */
+	void disconnect() {
+		_upstream.clear();
+		_downstream.clear();
+	}
+
+	// ******************************************************************************************************************
+	// Sampling
+	// ******************************************************************************************************************
+
+	/** Check only a sample of the subjects with the given plan, or all of them with null. */
+	public void setSamplingPlan(SamplingPlan plan) {
+		_samplingPlan = plan;
+	}
+
+	public SamplingPlan getSamplingPlan() {
+		return _samplingPlan;
+	}
+
+	/** Returns the estimate of the defects of all the subjects after a sampled check, or null after a full check. */
+	public SampleEstimate getSampleEstimate() {
+		return _sampleEstimate;
+	}
+
+	void setSampleEstimate(SampleEstimate estimate) {
+		_sampleEstimate = estimate;
+	}
+
+	/**
+	 * Returns the key of the subject source registered in the configuration which this checker consumes, or null if it
+	 * enumerates its own subjects with getSubjects(). All the checkers consuming the same source share a single scan of
+	 * its subjects during an audit, see AConfig.registerSubjectSource().
+	 */
+	public String getSubjectSource() {
+		return null;
+	}
+
+	// ******************************************************************************************************************
+	// Incremental check
+	// ******************************************************************************************************************
+
+	/**
+	 * Returns a fingerprint of the current state of a subject, like a content hash or a modification time and size, or
+	 * null if the subject can't be fingerprinted. A subject with an unchanged fingerprint is not checked again when a
+	 * defect cache is set. Files and paths are fingerprinted by their modification time and size.
+	 */
+	public String getSubjectFingerprint(S subject) {
+		File file = null;
+		if (subject instanceof File) {
+			file = (File) subject;
+		} else if (subject instanceof Path) {
+			file = ((Path) subject).toFile();
+		}
+		return (file == null) ? null : file.lastModified() + ":" + file.length();
+	}
+
+	/** Returns the key identifying a subject in the defect cache, its string value by default. */
+	public String getSubjectKey(S subject) {
+		return String.valueOf(subject);
+	}
+
+	/** Returns a hash of the class, version and parameters of the checker, which invalidates its cached defects. */
+	public String getConfigHash() {
+		return Hashing.murmur3_128().newHasher()
+				.putString(getClass().getName(), StandardCharsets.UTF_8)
+				.putString(String.valueOf(getVersion()), StandardCharsets.UTF_8)
+				.putString(saveAsJson().toString(), StandardCharsets.UTF_8)
+				.hash().toString();
+	}
+
+	/** Set the cache of defects used for the next checks, or null to check all the subjects. */
+	public void setDefectCache(DefectCache cache) {
+		_defectCache = cache;
+	}
+
+	public DefectCache getDefectCache() {
+		return _defectCache;
+	}
+
+	// ******************************************************************************************************************
+	// Life cycle
+	// ******************************************************************************************************************
 
+	/** Set up the checker and reset its statistics before checking subjects. */
+	void begin() {
 		_logger.debug("Start checking with {}", getName());
 
 		if (!setUp()) {
 			throw new IllegalStateException(String.format("Checker %s failed to tear up.", this.toString()));
 		}
 
-		Stream<? extends S> subjects = getSubjects();
-
 		_nbCheckedSubjects.set(0);
+		_stats.reset();
+		_tripped = false;
+		_sampleEstimate = null;
+		if (!isThreadSafe() && (_nbAbandoned.get() > 0)) {
+			trip("because a check abandoned before is still running");
+		}
+	}
 
-		return (subjects == null) ? Stream.empty()
-				: subjects
-						.filter(this::isValidSubject)
-						.map((S subject) -> {
-							_nbCheckedSubjects.incrementAndGet();
-							D defect = null;
-							try {
-								_checksDuration.resume();
-								defect = this.doCheck(subject);
-								_checksDuration.pause();
-							} catch (Exception e) {
-								_logger.error("Checker {} failed on {} because of {}", this, subject, Tools.getExceptionMessages(e));
-								e.printStackTrace();
-								_checksDuration.pause();
-							}
-							return defect;
-						})
-						.filter(Objects::nonNull)
-						.onClose(() -> {
-							if (!tearDown()) {
-								throw new IllegalStateException(String.format("Checker %s failed to tear down.", this.toString()));
-							}
-							_logger.debug("End of checking with {} for {} subjects", getName(), _nbCheckedSubjects.get());
-						});
+	/** Tear down the checker after all its subjects are checked. */
+	void end() {
+		if (_defectCache != null) {
+			_defectCache.save();
+		}
+		if (!tearDown()) {
+			throw new IllegalStateException(String.format("Checker %s failed to tear down.", this.toString()));
+		}
+		_logger.debug("End of checking with {} for {} subjects", getName(), _nbCheckedSubjects.get());
+	}
+
+	/** Check a single valid subject, recording the statistics of the check. */
+	@SuppressWarnings("unchecked")
+	D checkSubject(S subject) {
+		if (_tripped) {
+			return null;
+		}
+		_nbCheckedSubjects.incrementAndGet();
+
+		String key = null;
+		String fingerprint = null;
+		if (_defectCache != null) {
+			key = getSubjectKey(subject);
+			fingerprint = getSubjectFingerprint(subject);
+			DefectCache.Entry cached = (fingerprint == null) ? null : _defectCache.lookup(key, fingerprint);
+			if (cached != null) {
+				_stats.recordCached();
+				return (D) cached.defect;
+			}
+		}
+
+		D defect = null;
+		Exception error = null;
+		boolean timedOut = false;
+		long start = System.nanoTime();
+		try {
+			defect = (_subjectTimeout > 0) ? callWithTimeout(() -> doCheck(subject), _subjectTimeout) : doCheck(subject);
+		} catch (TimeoutException e) {
+			timedOut = true;
+			error = e;
+			defect = timeout(subject);
+		} catch (Exception e) {
+			error = e;
+		}
+		long duration = System.nanoTime() - start;
+		boolean failed = (error != null) && !timedOut;
+		if (failed) {
+			_logger.error("Checker {} failed on {} because of {}", this, subject, Tools.getExceptionMessages(error));
+			error.printStackTrace();
+		}
+		_stats.record(duration, failed);
+
+		CheckerProfile profile = _profile;
+		if (profile != null) {
+			profile.record(this, subject, duration, error);
+		}
+
+		// A failed or timed out check is done again next time.
+		if ((fingerprint != null) && !failed && !timedOut) {
+			_defectCache.put(key, fingerprint, defect);
+		}
+		return defect;
+	}
+
+	/** Profile the checks with the given profile, or stop profiling them with null. */
+	public void setProfile(CheckerProfile profile) {
+		_profile = profile;
+	}
+
+	public CheckerProfile getProfile() {
+		return _profile;
+	}
 
+	/** Returns the statistics of the subjects checked during the last check. */
+	public CheckerStats getStats() {
+		return _stats;
 	}
 
+	/** Returns the cumulated duration of the checks, over all the threads. */
 	public Chrono getDuration() {
-		return _checksDuration;
+		return Chrono.of(_stats.getDuration());
 	}
 
+	/** Returns the average duration of a check in milliseconds. */
 	public double getAvgDuration() {
-		return (double) _checksDuration.elapsed() / _nbCheckedSubjects.get();
+		return _stats.getAvgDuration();
 	}
 
 	/** Returns the number of subjects checked per seconds */
 	public double getChecksPerSeconds() {
-		return 1000. * _nbCheckedSubjects.get() / _checksDuration.elapsed();
+		return _stats.getChecksPerSeconds();
 	}
 
 	// ******************************************************************************************************************
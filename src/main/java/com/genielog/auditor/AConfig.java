@@ -6,17 +6,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.cli.CommandLine;
@@ -39,7 +45,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.genielog.tools.JsonUtils;
 import com.genielog.tools.RelaxedOptionsParser;
-import com.genielog.tools.ResUtils;
+import com.genielog.tools.ResourceIndex;
 import com.genielog.tools.Tools;
 import com.genielog.tools.parameters.AttributeWrapper;
 
@@ -59,8 +65,17 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 	// The list of all available checkers (and not yet enabled).
 	protected List<C> _disabledCheckers = new ArrayList<>();
 
+	// The sources of subjects shared by the checkers, by key.
+	protected Map<String, Supplier<? extends Stream<?>>> _subjectSources = new HashMap<>();
+
 	protected Options _options = null;
 
+	// Number of threads parsing the checker definitions.
+	protected int _loadingThreads = Runtime.getRuntime().availableProcessors();
+
+	// The compiled bundle of the checker definitions, or null.
+	protected File _checkerBundle = null;
+
 	protected AConfig() {
 		_logger = LogManager.getLogger(this.getClass());
 
@@ -182,27 +197,31 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 
 	/** Parse the input stream as a JSON source and make a checker from it. */
 	protected final C makeChecker(InputStream checkerFile) {
-		C result = null;
+		JsonNode jsonChecker = readDefinition(checkerFile);
+		return (jsonChecker == null) ? null : makeChecker(jsonChecker);
+	}
+
+	/** Parse the input stream as the JSON definition of a checker, or returns null if it can't be parsed. */
+	private JsonNode readDefinition(InputStream checkerFile) {
 		JsonNode jsonChecker = null;
 		try {
 			jsonChecker = AConfig.getObjectMapper().readTree(checkerFile);
-			if ((jsonChecker != null) && (jsonChecker.get("version").asText("").startsWith("Checker "))) {
-				result = makeChecker(jsonChecker);
-			} else {
+			if ((jsonChecker == null) || !jsonChecker.get("version").asText("").startsWith("Checker ")) {
 				_logger.error("Submitted JSON is not one of a Checker ? ");
 				throw new IllegalArgumentException("\"Submitted JSON is not one of a Checker ? \"");
 			}
 		} catch (IOException e) {
 			_logger.error("Unable to parse JSON : {}", Tools.getExceptionMessages(e));
+			jsonChecker = null;
 		}
-		return result;
+		return jsonChecker;
 	}
 
 	// ******************************************************************************************************************
 	// Checker Serialization
 	// ******************************************************************************************************************
 
-	public static ObjectMapper getObjectMapper() {
+	public static synchronized ObjectMapper getObjectMapper() {
 		if (sMapper == null) {
 			sMapper = new ObjectMapper();
 			sMapper.setVisibility(PropertyAccessor.ALL, Visibility.NONE);
@@ -214,6 +233,16 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 		return sMapper;
 	}
 
+	/** Returns the registry resolving the class names of the checker definitions, shared by default. */
+	protected CheckerRegistry getCheckerRegistry() {
+		return CheckerRegistry.getDefault();
+	}
+
+	/**
+	 * Create a checker from its JSON definition, or returns null on failure. It is called concurrently by the loading
+	 * threads of init() (see setLoadingThreads), so an override must be thread-safe: a work needing the other checkers
+	 * or the state of this configuration belongs in checkerLoaded().
+	 */
 	protected C makeChecker(JsonNode jsonChecker) {
 		C result = null;
 
@@ -226,18 +255,7 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 			throw new IllegalArgumentException("Missing class name '.class-name' in JSON");
 		}
 
-		Class<?> checkerClass = null;
-
-		int iPackage = 0;
-		while ((iPackage < checkerPackages.size()) && (checkerClass == null)) {
-			String fullClassname = checkerPackages.get(iPackage) + "." + className;
-			try {
-				checkerClass = Class.forName(fullClassname);
-			} catch (ClassNotFoundException e) {
-				_logger.debug("Checker class {} not found in package {}", className, checkerPackages.get(iPackage));
-			}
-			iPackage++;
-		}
+		Class<? extends AChecker> checkerClass = getCheckerRegistry().resolve(className, checkerPackages);
 
 		if (checkerClass == null) {
 			_logger.error("Unknown Checker's class name '{}'", className);
@@ -246,23 +264,28 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 				_logger.error("  - {}", checkerPackages.get(i));
 			}
 		} else {
-			try {
+			_logger.debug("Checker class '{}' for '{}' found at '{}'",
+					className,
+					JsonUtils.getFieldAsText(jsonChecker, ".name", null, null),
+					checkerClass.getCanonicalName());
+			result = makeChecker(checkerClass, jsonChecker);
+		}
 
-				_logger.debug("Checker class '{}' for '{}' found at '{}'",
-						className,
-						JsonUtils.getFieldAsText(jsonChecker, ".name", null, null),
-						checkerClass.getCanonicalName());
+		return result;
+	}
 
-				Constructor<?> checkerConstructor = checkerClass.getConstructor();
-				Object checkerInstance = checkerConstructor.newInstance();
-				if (checkerInstance instanceof AChecker<?, ?>) {
-					result = (C) checkerInstance;
-				}
-			} catch (Exception e) {
-				_logger.error("Unable to create checker object from class {}", className);
-				_logger.error("Reason: {}", Tools.getExceptionMessages(e));
-				e.printStackTrace();
-			}
+	/**
+	 * Create a checker of a resolved class and load its JSON definition, or returns null on failure. Like
+	 * makeChecker(JsonNode), it runs on the loading threads of init() and an override must be thread-safe.
+	 */
+	protected C makeChecker(Class<? extends AChecker> checkerClass, JsonNode jsonChecker) {
+		C result = null;
+		try {
+			result = (C) getCheckerRegistry().newInstance(checkerClass);
+		} catch (Exception e) {
+			_logger.error("Unable to create checker object from class {}", checkerClass.getName());
+			_logger.error("Reason: {}", Tools.getExceptionMessages(e));
+			e.printStackTrace();
 		}
 
 		if (result != null) {
@@ -270,7 +293,7 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 				_logger.error("Checker created but loading its configuration failed ?");
 			}
 		} else {
-			_logger.error("Unable to create Checker {}.", className);
+			_logger.error("Unable to create Checker {}.", checkerClass.getName());
 		}
 
 		return result;
@@ -547,6 +570,64 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 		return result;
 	}
 
+	/** A checker definition found during the initialization, opened only when it is parsed. */
+	private static class CheckerDefinition {
+
+		final String location;
+		final Callable<InputStream> opener;
+		final boolean required;
+
+		// Returns the stamp of the current state of the definition, computed without reading it.
+		final Callable<String> stamper;
+
+		CheckerDefinition(String location, Callable<InputStream> opener, boolean required, Callable<String> stamper) {
+			this.location = location;
+			this.opener = opener;
+			this.required = required;
+			this.stamper = stamper;
+		}
+
+		/**
+		 * Returns a stamp of the current state of the definition: time and size for a file, CRC and size of the entry for a
+		 * resource of a jar.
+		 */
+		String stamp() throws Exception {
+			return String.valueOf(stamper.call());
+		}
+	}
+
+	/**
+	 * Set the file of the compiled bundle of the checker definitions, or null. When set, init() decodes the checkers
+	 * from the bundle if it is up to date, and compiles it again from the JSON definitions otherwise.
+	 */
+	public void setCheckerBundle(File bundle) {
+		_checkerBundle = bundle;
+	}
+
+	public File getCheckerBundle() {
+		return _checkerBundle;
+	}
+
+	/** Compiles the bundle of all the checker definitions in the given file, returns false if some failed to load. */
+	public boolean compileCheckerBundle(File bundle) {
+		if (bundle == null) {
+			throw new IllegalArgumentException("Undefined file for the checker bundle.");
+		}
+		if (bundle.isFile() && !bundle.delete()) {
+			_logger.warn("Unable to remove previous checker bundle {}", bundle.getAbsolutePath());
+		}
+		setCheckerBundle(bundle);
+		return init();
+	}
+
+	/** Set the number of threads parsing the checker definitions during init(), the number of processors by default. */
+	public void setLoadingThreads(int nbThreads) {
+		if (nbThreads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be strictly positive : " + nbThreads);
+		}
+		_loadingThreads = nbThreads;
+	}
+
 	/** After being loaded, a configuration should be initialized. */
 	public boolean init() {
 		boolean result = true;
@@ -559,32 +640,17 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 		_logger.debug("Clearing list of {} available checkers.", _disabledCheckers.size());
 		_disabledCheckers.clear();
 
+		List<CheckerDefinition> definitions = new ArrayList<>();
+
 		//
 		// A Configuration can be initialized from a FileSystem directory where all available
-		// checker definitions might be found in files METRICS*.json
+		// checker definitions might be found in files *.json
 		//
 		if (getConfigDir() != null) {
 			File cfgDir = new File(getConfigDir());
 			if (cfgDir.isDirectory()) {
 				_logger.debug("Loading  list of known checkers from {}.", getConfigDir());
-				WildcardFileFilter filter = new WildcardFileFilter(".*\\.json");
-				Iterator<File> allCheckerFiles = FileUtils.iterateFiles(cfgDir, filter, DirectoryFileFilter.DIRECTORY);
-				while (allCheckerFiles.hasNext()) {
-					File checkerFile = allCheckerFiles.next();
-					C checker = null;
-					try (FileInputStream checkerIS = new FileInputStream(checkerFile)) {
-						checker = makeChecker(checkerIS);
-					} catch (IOException e) {
-						_logger.error("Unable to open stream for file {}", checkerFile.getAbsolutePath());
-					}
-					if ((checker == null) || !checker.isValid()) {
-						_logger.error("Unable to load checker from file {}.", checkerFile.getAbsolutePath());
-						result = false;
-					} else {
-						_logger.debug("Adding new checker fromm configuration folder : {}", checker.getName());
-						_disabledCheckers.add(checker);
-					}
-				}
+				addFileDefinitions(definitions, cfgDir, true);
 			} else {
 				_logger.warn("No configuration directory found at {}", getConfigDir());
 			}
@@ -613,41 +679,14 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 			} else {
 
 				//
-				// Load the checkers from the executable JAR
+				// Load the checkers from the executable JAR, the streams are opened only when parsed.
 				//
 				if (uri.getScheme().contains("jar")) {
-					List<Path> allJsonFiles = ResUtils.searchPath(this.getClass(), null, "/checkers", ".*\\.json");
-
-					HashMap<String, InputStream> allStreams = new HashMap<>();
-
-					for (Path p : allJsonFiles) {
-						InputStream is = AConfig.class.getResourceAsStream(p.toString());
-						if (is != null) {
-							allStreams.put(p.getFileName().toString(), is);
-						} else {
-							_logger.debug("Unable to create input stream for path {}", p);
-						}
-					}
-
-					for (Map.Entry<String, InputStream> entry : allStreams.entrySet()) {
-						if (entry.getKey().endsWith(".json")) {
-							C checker = null;
-							try (InputStream checkerIS = entry.getValue()) {
-								checker = makeChecker(checkerIS);
-							} catch (IOException e) {
-								_logger.error("Unable to open stream for resource file {}", entry.getKey());
-							}
-
-							if ((checker == null) || !checker.isValid()) {
-								_logger.error("Unable to load checker from resource file {}.", entry.getKey());
-								result = false;
-							} else {
-								_logger.debug("Adding new checker : {}", checker.getName());
-								_disabledCheckers.add(checker);
-							}
-						}
+					ResourceIndex index = ResourceIndex.forResource(this.getClass(), folderPath);
+					for (String path : (index == null) ? List.<String>of() : index.find(folderPath, ".*\\.json")) {
+						definitions.add(new CheckerDefinition(path, () -> index.open(path), true,
+								() -> index.stamp(path)));
 					}
-
 				}
 
 				//
@@ -655,33 +694,167 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 				//
 				else {
 					_logger.debug("Loading  list of known checkers from internal definitions");
-					File dir = new File(uri);
-					WildcardFileFilter filter = new WildcardFileFilter("*.json");
-					Iterator<File> allFiles = FileUtils.iterateFiles(dir, filter, DirectoryFileFilter.DIRECTORY);
-
-					allFiles.forEachRemaining(nextFile -> {
-						C checker = null;
-						try (FileInputStream checkerIS = new FileInputStream(nextFile)) {
-							checker = makeChecker(checkerIS);
-						} catch (IOException e) {
-							_logger.error("Exception triggered while trying to create a checker from JSON definition at {} : {}",
-									nextFile.getAbsolutePath(),
-									Tools.getExceptionMessages(e));
-						}
-						if ((checker == null) || !checker.isValid()) {
-							_logger.error("Unable to load checker from file {}.", nextFile.getAbsolutePath());
-						} else {
-							_logger.debug("Adding new checker : {}", checker.getName());
-							_disabledCheckers.add(checker);
-						}
+					addFileDefinitions(definitions, new File(uri), false);
+				}
+			}
 
-					});
+		}
+
+		//
+		// Decode the checkers from the bundle when it is up to date, otherwise parse all the definitions concurrently,
+		// each one with its own stream, and keep their order of discovery.
+		//
+		List<C> checkers = (_checkerBundle != null) ? loadBundle(definitions) : null;
+		if (checkers == null) {
+			JsonNode[] nodes = new JsonNode[definitions.size()];
+			checkers = loadCheckers(definitions, nodes);
+			if (_checkerBundle != null) {
+				writeBundle(definitions, nodes, checkers);
+			}
+		}
+		for (int i = 0; i < definitions.size(); i++) {
+			C checker = checkers.get(i);
+			if ((checker == null) || !checker.isValid()) {
+				_logger.error("Unable to load checker from {}.", definitions.get(i).location);
+				result &= !definitions.get(i).required;
+			} else {
+				_logger.debug("Adding new checker : {}", checker.getName());
+				checkerLoaded(checker);
+				_disabledCheckers.add(checker);
+			}
+		}
+		return result;
+
+	}
+
+	/**
+	 * Called by init() on its own thread for each valid checker, in the order of the definitions, once all of them are
+	 * loaded and before the checker is added to this configuration. Does nothing by default.
+	 */
+	protected void checkerLoaded(C checker) {
+	}
+
+	/** Add the definitions of checkers found in the JSON files of a directory, sorted by path. */
+	private void addFileDefinitions(List<CheckerDefinition> definitions, File dir, boolean required) {
+		WildcardFileFilter filter = new WildcardFileFilter("*.json");
+		List<File> files = new ArrayList<>(FileUtils.listFiles(dir, filter, DirectoryFileFilter.DIRECTORY));
+		Collections.sort(files);
+		for (File file : files) {
+			definitions.add(new CheckerDefinition(file.getAbsolutePath(), () -> new FileInputStream(file), required,
+					() -> file.lastModified() + ":" + file.length()));
+		}
+	}
+
+	/**
+	 * Parse the checker definitions on a pool of threads, so at most as many streams as threads are open at once.
+	 * Returns the checkers in the order of the definitions, with null for the ones which failed, and fills the parsed
+	 * JSON definitions.
+	 */
+	private List<C> loadCheckers(List<CheckerDefinition> definitions, JsonNode[] nodes) {
+		List<Callable<C>> loaders = new ArrayList<>(definitions.size());
+		for (int i = 0; i < definitions.size(); i++) {
+			CheckerDefinition definition = definitions.get(i);
+			int index = i;
+			loaders.add(() -> {
+				try (InputStream checkerIS = definition.opener.call()) {
+					nodes[index] = (checkerIS == null) ? null : readDefinition(checkerIS);
+					return (nodes[index] == null) ? null : makeChecker(nodes[index]);
+				} catch (Exception e) {
+					_logger.error("Exception triggered while trying to create a checker from JSON definition at {} : {}",
+							definition.location, Tools.getExceptionMessages(e));
+					return null;
 				}
+			});
+		}
+		return runLoaders(loaders);
+	}
+
+	/** Run the loaders of checkers on a pool of threads, and returns their results in the same order. */
+	private List<C> runLoaders(List<Callable<C>> loaders) {
+		List<C> result = new ArrayList<>(loaders.size());
+		if (loaders.isEmpty()) {
+			return result;
+		}
+
+		// The shared object mapper is created before being used by the workers.
+		getObjectMapper();
+
+		ExecutorService pool = Executors.newFixedThreadPool(Integer.min(_loadingThreads, loaders.size()));
+		try {
+			List<Future<C>> futures = pool.invokeAll(loaders);
+			for (Future<C> future : futures) {
+				result.add(future.get());
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading the checker definitions.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to load the checker definitions.", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return result;
+	}
 
+	/** Returns the stamps of the current state of the definitions. */
+	private List<String> stamps(List<CheckerDefinition> definitions) throws Exception {
+		List<String> result = new ArrayList<>(definitions.size());
+		for (CheckerDefinition definition : definitions) {
+			result.add(definition.stamp());
 		}
 		return result;
+	}
 
+	/** Decode the checkers from the bundle, or returns null if the bundle is missing or stale. */
+	private List<C> loadBundle(List<CheckerDefinition> definitions) {
+		CheckerBundle bundle = CheckerBundle.read(_checkerBundle);
+		if (bundle == null) {
+			return null;
+		}
+		try {
+			List<String> locations = definitions.stream().map(d -> d.location).collect(Collectors.toList());
+			if (!bundle.isUpToDate(locations, stamps(definitions))) {
+				_logger.debug("Checker bundle {} is stale, loading the JSON definitions.", _checkerBundle.getName());
+				return null;
+			}
+		} catch (Exception e) {
+			_logger.error("Unable to check checker bundle {} : {}", _checkerBundle.getName(), Tools.getExceptionMessages(e));
+			return null;
+		}
+
+		_logger.debug("Loading {} checkers from bundle {}", bundle.getEntries().size(), _checkerBundle.getName());
+		List<Callable<C>> loaders = new ArrayList<>();
+		for (CheckerBundle.Entry entry : bundle.getEntries()) {
+			loaders.add(() -> {
+				if (entry.className.isEmpty()) {
+					return null;
+				}
+				Class<? extends AChecker> checkerClass = getCheckerRegistry().resolve(entry.className, null);
+				if (checkerClass == null) {
+					_logger.error("Unknown Checker's class name '{}' in bundle", entry.className);
+					return null;
+				}
+				return makeChecker(checkerClass, entry.definition);
+			});
+		}
+		return runLoaders(loaders);
+	}
+
+	/** Compile the bundle of the definitions, with the class of the checkers created from them. */
+	private void writeBundle(List<CheckerDefinition> definitions, JsonNode[] nodes, List<C> checkers) {
+		List<CheckerBundle.Entry> entries = new ArrayList<>(definitions.size());
+		for (int i = 0; i < definitions.size(); i++) {
+			C checker = checkers.get(i);
+			entries.add(new CheckerBundle.Entry(definitions.get(i).location,
+					(checker == null) ? "" : checker.getClass().getName(), nodes[i]));
+		}
+		try {
+			List<String> locations = definitions.stream().map(d -> d.location).collect(Collectors.toList());
+			CheckerBundle.write(_checkerBundle, locations, stamps(definitions), entries);
+		} catch (Exception e) {
+			_logger.error("Unable to write checker bundle {} : {}", _checkerBundle.getAbsolutePath(),
+					Tools.getExceptionMessages(e));
+		}
 	}
 
 	//
@@ -851,4 +1024,63 @@ public abstract class AConfig<C extends AChecker> extends AttributeWrapper {
 	public Stream<C> getEnabledCheckers() {
 		return _enabledCheckers.stream();
 	}
+
+	// ******************************************************************************************************************
+	// Audit
+	// ******************************************************************************************************************
+
+	/** Returns a new engine for running the enabled checkers of this configuration. */
+	public AuditEngine<C> getAuditEngine() {
+		return new AuditEngine<>(this);
+	}
+
+	/**
+	 * Returns the graph of the dependencies between the enabled checkers.
+	 *
+	 * @throws IllegalStateException
+	 *           if the dependencies contain a cycle
+	 */
+	public CheckerGraph<C> getCheckerGraph() {
+		return new CheckerGraph<>(getEnabledCheckers().collect(Collectors.toList()));
+	}
+
+	/**
+	 * Run all the enabled checkers concurrently, with at most nbThreads checkers at the same time, and pass all their
+	 * defects to the sink. The sink is called from the current thread only.
+	 */
+	public AuditReport audit(int nbThreads, Consumer<? super ADefect> sink) {
+		return getAuditEngine().setNbThreads(nbThreads).run(sink);
+	}
+
+	/**
+	 * Same as audit(), checking only a sample of the subjects of each checker. The report gives the estimates of the
+	 * defects on all the subjects.
+	 */
+	public AuditReport audit(int nbThreads, SamplingPlan plan, Consumer<? super ADefect> sink) {
+		return getAuditEngine().setNbThreads(nbThreads).setSampling(plan).run(sink);
+	}
+
+	/**
+	 * Opens a writer for storing defects in a JSON Lines file, gzip-compressed if its name ends with ".gz". The writer
+	 * can be the sink of audit() and must be closed at the end.
+	 */
+	public DefectWriter openDefectWriter(File file) throws IOException {
+		return new DefectWriter(file);
+	}
+
+	/**
+	 * Register a source of subjects shared by all the checkers returning its key from getSubjectSource(). During an
+	 * audit, the source is enumerated only once and each of its subjects dispatched to all these checkers.
+	 */
+	public void registerSubjectSource(String key, Supplier<? extends Stream<?>> source) {
+		if ((key == null) || (source == null)) {
+			throw new IllegalArgumentException("Undefined key or supplier for the subject source.");
+		}
+		_subjectSources.put(key, source);
+	}
+
+	/** Returns the supplier of the subjects registered with the given key, or null. */
+	public Supplier<? extends Stream<?>> getSubjectSource(String key) {
+		return (key == null) ? null : _subjectSources.get(key);
+	}
 }
@@ -1,17 +1,29 @@
 package com.genielog.auditor;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Hashing;
 
 @JsonPropertyOrder( { "checker_name","checker_description","shortMessage","longMessage" })
 public abstract class ADefect<C extends AChecker<S,? extends ADefect<C,S>>, S > implements Serializable {
 
 	private static final long serialVersionUID = 7236397752439750703L;
 
+	private static ObjectMapper sFieldsMapper = null;
+
 	protected transient Logger _logger;
 
 	protected transient C checker;
@@ -23,6 +35,14 @@ public abstract class ADefect<C extends AChecker<S,? extends ADefect<C,S>>, S >
 		this.subject = subject;
 	}
 	
+	/** Reattach a defect replayed from a cache to the checker which produced it. */
+	void attach(C checker) {
+		if (_logger == null) {
+			_logger = LogManager.getLogger(this.getClass());
+		}
+		this.checker = checker;
+	}
+
 	public C checker() {
 		return this.checker;
 	}
@@ -30,5 +50,87 @@ public abstract class ADefect<C extends AChecker<S,? extends ADefect<C,S>>, S >
 	public S subject() {
 		return this.subject;
 	}
+
+	/** Returns the key identifying the subject of the defect, as defined by its checker. */
+	public String subjectKey() {
+		return (checker != null) ? checker.getSubjectKey(subject) : String.valueOf(subject);
+	}
+
+	/**
+	 * Returns the signature of the defect, identifying the kind of problem reported on the subject. Two defects of the
+	 * same checker on the same subject with the same signature are duplicates. By default, the class of the defect.
+	 */
+	public String signature() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * Returns a stable fingerprint of the defect, from the name of its checker, the key of its subject and its signature,
+	 * for matching the same defect in different audits.
+	 */
+	public String fingerprint() {
+		return fingerprint((checker != null) ? checker.getName() : null, subjectKey(), signature());
+	}
+
+	/** Returns the fingerprint of a defect from the name of its checker, the key of its subject and its signature. */
+	public static String fingerprint(String checkerName, String subjectKey, String signature) {
+		return Hashing.murmur3_128().newHasher()
+				.putString(String.valueOf(checkerName), StandardCharsets.UTF_8).putByte((byte) 0)
+				.putString(String.valueOf(subjectKey), StandardCharsets.UTF_8).putByte((byte) 0)
+				.putString(String.valueOf(signature), StandardCharsets.UTF_8)
+				.hash().toString();
+	}
+
+	// ******************************************************************************************************************
+	// JSON
+	// ******************************************************************************************************************
+
+	@JsonIgnoreProperties({ "subject" })
+	private abstract static class FieldsMixIn {
+	}
+
+	/** The configuration object mapper, ignoring the subject of the defects which may not be serializable. */
+	private static synchronized ObjectMapper getFieldsMapper() {
+		if (sFieldsMapper == null) {
+			sFieldsMapper = AConfig.getObjectMapper().copy()
+					.addMixIn(ADefect.class, FieldsMixIn.class)
+					.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+		}
+		return sFieldsMapper;
+	}
+
+	/**
+	 * Writes the defect as a single JSON object: the name and version of its checker, the key of its subject, its
+	 * signature and fingerprint, then the fields of the concrete defect written by writeJsonFields().
+	 */
+	public void toJson(JsonGenerator gen) throws IOException {
+		gen.writeStartObject();
+		if (checker != null) {
+			gen.writeStringField("checker_name", checker.getName());
+			gen.writeStringField("checker_version", checker.getVersion());
+		}
+		String subjectKey = subjectKey();
+		String signature = signature();
+		gen.writeStringField("subject", subjectKey);
+		gen.writeStringField("signature", signature);
+		gen.writeStringField("fingerprint",
+				fingerprint((checker != null) ? checker.getName() : null, subjectKey, signature));
+		writeJsonFields(gen);
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Writes the specific fields of the defect in the current JSON object. By default, all the fields of the concrete
+	 * defect except its subject are written, as the configuration object mapper would serialize them.
+	 */
+	protected void writeJsonFields(JsonGenerator gen) throws IOException {
+		JsonNode node = getFieldsMapper().valueToTree(this);
+		Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			gen.writeFieldName(field.getKey());
+			gen.writeTree(field.getValue());
+		}
+	}
 	
 }
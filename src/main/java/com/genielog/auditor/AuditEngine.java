@@ -0,0 +1,491 @@
+package com.genielog.auditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.genielog.tools.Chrono;
+import com.genielog.tools.Tools;
+
+/**
+ * Runs all the enabled checkers of a configuration concurrently. <br>
+ * Each checker is executed by a worker of a bounded pool, through its usual life cycle (setUp, check of all its
+ * subjects and tearDown when its defect stream is closed). The defects produced by all the checkers are merged into a
+ * single sink, which is always called from the thread running the audit, so it doesn't need to be thread-safe. <br>
+ * The checkers consuming the same subject source registered in the configuration share a single task, which
+ * enumerates the source once and dispatches every subject to all of them. <br>
+ * With a {@link TimingHistory}, the checkers expected to be the longest are started first, which minimizes the total
+ * duration of the audit, and this duration can be estimated before running it. <br>
+ * A checker depending on others (see {@link CheckerGraph}) runs at the same time as its producers and reads their
+ * defects as they are published. It is always started after them, and as the channels between checkers are unbounded,
+ * a consumer waiting for its producers never prevents them from completing.
+ *
+ * @param <C>
+ *          The type of the checkers of the configuration
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class AuditEngine<C extends AChecker> {
+
+	protected Logger _logger;
+
+	protected final AConfig<C> _config;
+
+	// Maximum number of checkers executed at the same time, the number of processors by default.
+	protected int _nbThreads = Runtime.getRuntime().availableProcessors();
+
+	// Check the subjects of the thread-safe checkers in parallel
+	protected boolean _parallelSubjects = false;
+
+	// Directory of the defect caches for an incremental audit, or null.
+	protected File _cacheDir = null;
+
+	// Durations of the checkers during the previous audits, for scheduling the longest first.
+	protected TimingHistory _timingHistory = null;
+
+	// Maximum number of defects produced by the workers and not yet passed to the sink.
+	protected int _queueCapacity = 10000;
+
+	// Plan for checking only a sample of the subjects of all the checkers, or null for a full audit.
+	protected SamplingPlan _samplingPlan = null;
+
+	// Profiling of the checks: number of slowest subjects kept per checker, or -1 not to profile, and the sampling of
+	// the durations.
+	protected int _profileSlowest = -1;
+	protected int _profileSampleEvery = 1;
+
+	// File of the JSON profiling report, or null.
+	protected File _profileFile = null;
+
+	public AuditEngine(AConfig<C> config) {
+		if (config == null) {
+			throw new IllegalArgumentException("Undefined configuration to audit.");
+		}
+		_logger = LogManager.getLogger(this.getClass());
+		_config = config;
+	}
+
+	public AuditEngine<C> setNbThreads(int nbThreads) {
+		if (nbThreads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be strictly positive : " + nbThreads);
+		}
+		_nbThreads = nbThreads;
+		return this;
+	}
+
+	public int getNbThreads() {
+		return _nbThreads;
+	}
+
+	public AuditEngine<C> setQueueCapacity(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity must be strictly positive : " + capacity);
+		}
+		_queueCapacity = capacity;
+		return this;
+	}
+
+	/** Check in parallel the subjects of the checkers declared thread-safe, see AChecker.check(boolean). */
+	public AuditEngine<C> setParallelSubjects(boolean parallel) {
+		_parallelSubjects = parallel;
+		return this;
+	}
+
+	public boolean isParallelSubjects() {
+		return _parallelSubjects;
+	}
+
+	/**
+	 * Enable the incremental audit with the defect caches of the checkers in the given directory, or disable it with
+	 * null. Subjects whose fingerprint didn't change since the previous audit are not checked again.
+	 */
+	public AuditEngine<C> setIncremental(File cacheDir) {
+		_cacheDir = cacheDir;
+		return this;
+	}
+
+	public File getCacheDir() {
+		return _cacheDir;
+	}
+
+	/** Use and update the durations of the checkers measured during the previous audits, or null. */
+	public AuditEngine<C> setTimingHistory(TimingHistory history) {
+		_timingHistory = history;
+		return this;
+	}
+
+	public TimingHistory getTimingHistory() {
+		return _timingHistory;
+	}
+
+	/**
+	 * Check only a sample of the subjects of each checker, or all of them with null. The report then gives for each
+	 * checker the estimate of its defects on all its subjects, see AuditReport.CheckerReport.getSampleEstimate(). A
+	 * sampled audit neither uses the defect caches of an incremental audit nor records its durations in the timing
+	 * history, which both describe a check of all the subjects.
+	 */
+	public AuditEngine<C> setSampling(SamplingPlan plan) {
+		_samplingPlan = plan;
+		return this;
+	}
+
+	public SamplingPlan getSampling() {
+		return _samplingPlan;
+	}
+
+	/**
+	 * Profile the checks of the audit, keeping the given number of slowest subjects of each checker and recording the
+	 * duration of one check out of sampleEvery in the latency histograms. The profiling report is logged at the end of
+	 * the audit, see AuditReport.getProfileText(), and written as JSON if a file is set.
+	 */
+	public AuditEngine<C> setProfiling(int nbSlowest, int sampleEvery) {
+		if ((nbSlowest < 0) || (sampleEvery <= 0)) {
+			throw new IllegalArgumentException(
+					"Invalid number of slowest subjects " + nbSlowest + " or sampling " + sampleEvery);
+		}
+		_profileSlowest = nbSlowest;
+		_profileSampleEvery = sampleEvery;
+		return this;
+	}
+
+	public boolean isProfiling() {
+		return _profileSlowest >= 0;
+	}
+
+	/** Write the JSON profiling report of a profiled audit in the given file, or not with null. */
+	public AuditEngine<C> setProfileFile(File file) {
+		_profileFile = file;
+		return this;
+	}
+
+	// ******************************************************************************************************************
+	// Execution
+	// ******************************************************************************************************************
+
+	/** The checkers to execute, in their order of submission to the workers. */
+	protected List<C> getCheckers() {
+		return _config.getEnabledCheckers().collect(Collectors.toList());
+	}
+
+	/**
+	 * Run all the enabled checkers and pass their defects to the sink.
+	 *
+	 * @return The report of the audit, with the figures of each checker.
+	 */
+	public AuditReport run(Consumer<? super ADefect> sink) {
+
+		if (sink == null) {
+			throw new IllegalArgumentException("Undefined sink for the defects of the audit.");
+		}
+
+		List<C> checkers = getCheckers();
+
+		AuditReport report = new AuditReport(_config.getName());
+		report.start();
+
+		_logger.debug("Starting audit with {} checkers on {} threads", checkers.size(), _nbThreads);
+
+		BlockingQueue<ADefect> queue = new LinkedBlockingQueue<>(_queueCapacity);
+		Consumer<ADefect> consumer = defect -> enqueue(queue, defect);
+
+		Map<C, AuditReport.CheckerReport> checkerReports = new LinkedHashMap<>();
+		Map<C, SamplingPlan> samplingPlans = new LinkedHashMap<>();
+		for (C checker : checkers) {
+			checkerReports.put(checker, report.add(checker.getName()));
+			boolean cached = (_cacheDir != null) && (_samplingPlan == null);
+			checker.setDefectCache(cached ? DefectCache.open(_cacheDir, checker) : null);
+			if (_samplingPlan != null) {
+				samplingPlans.put(checker, checker.getSamplingPlan());
+				checker.setSamplingPlan(_samplingPlan);
+			}
+			if (isProfiling()) {
+				checker.setProfile(new CheckerProfile(checker.getName(), _profileSlowest, _profileSampleEvery));
+			}
+		}
+
+		CheckerGraph<C> graph = new CheckerGraph<>(checkers);
+		for (C dependent : checkers) {
+			for (C producer : graph.getProducers(dependent)) {
+				dependent.connect(producer, new DefectChannel(producer.getName()));
+			}
+		}
+
+		List<Runnable> tasks = new ArrayList<>();
+		for (List<C> group : plan(checkers)) {
+			String source = group.get(0).getSubjectSource();
+			if (_config.getSubjectSource(source) != null) {
+				Map<C, AuditReport.CheckerReport> groupReports = new LinkedHashMap<>();
+				group.forEach(checker -> groupReports.put(checker, checkerReports.get(checker)));
+				tasks.add(() -> runSharedScan(source, groupReports, consumer));
+			} else {
+				C checker = group.get(0);
+				tasks.add(() -> runChecker(checker, checkerReports.get(checker), consumer));
+			}
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Integer.max(1, Integer.min(_nbThreads, tasks.size())));
+		tasks.forEach(pool::execute);
+		pool.shutdown();
+
+		//
+		// Drain the defects of all the workers into the sink, until all of them terminated.
+		//
+		List<ADefect> batch = new ArrayList<>();
+		try {
+			boolean terminated = false;
+			while (!terminated || !queue.isEmpty()) {
+				terminated = pool.isTerminated();
+				ADefect defect = queue.poll(50, TimeUnit.MILLISECONDS);
+				if (defect != null) {
+					sink.accept(defect);
+					queue.drainTo(batch);
+					batch.forEach(sink);
+					batch.clear();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			_logger.error("Audit {} interrupted.", _config.getName());
+			pool.shutdownNow();
+		} catch (RuntimeException e) {
+			_logger.error("Audit {} aborted because the sink failed : {}", _config.getName(), Tools.getExceptionMessages(e));
+			pool.shutdownNow();
+			throw e;
+		} finally {
+			report.stop();
+			checkers.forEach(AChecker::disconnect);
+			samplingPlans.forEach(AChecker::setSamplingPlan);
+			if (isProfiling()) {
+				checkers.forEach(checker -> checker.setProfile(null));
+			}
+		}
+
+		if (isProfiling()) {
+			_logger.info("Profile of audit {} :{}{}", _config.getName(), System.lineSeparator(), report.getProfileText());
+			if (_profileFile != null) {
+				try {
+					AConfig.getObjectMapper().writerWithDefaultPrettyPrinter().writeValue(_profileFile,
+							report.getProfileJson());
+				} catch (IOException e) {
+					_logger.error("Unable to write the profile of audit {} in {} : {}", _config.getName(),
+							_profileFile.getAbsolutePath(), Tools.getExceptionMessages(e));
+				}
+			}
+		}
+
+		// Only the full checks are timed: a sample, or the defects replayed from a cache, make a check much shorter.
+		if ((_timingHistory != null) && (_samplingPlan == null)) {
+			checkerReports.forEach((checker, checkerReport) -> {
+				if (!checkerReport.isFailed() && (checker.getStats().getNbCached() == 0)) {
+					_timingHistory.record(checkerReport.getName(), checkerReport.getDuration(), checkerReport.getNbSubjects());
+				}
+			});
+			_timingHistory.save();
+		}
+
+		_logger.debug("{}", report);
+		return report;
+	}
+
+	/**
+	 * Returns the tasks of the audit, in their order of submission to the workers. The checkers consuming the same
+	 * registered subject source share a single task scanning it, the others run on their own. With a timing history,
+	 * the tasks expected to be the longest are started first, and the tasks never timed before all of them. In any
+	 * case, the checkers are started after the ones they depend on, and those don't share a scan.
+	 */
+	protected List<List<C>> plan(List<C> checkers) {
+		List<List<C>> result = new ArrayList<>();
+		Map<String, List<C>> sharedScans = new LinkedHashMap<>();
+		for (C checker : checkers) {
+			String source = checker.getSubjectSource();
+			if ((_config.getSubjectSource(source) != null) && checker.getDependencies().isEmpty()) {
+				List<C> group = sharedScans.get(source);
+				if (group == null) {
+					group = new ArrayList<>();
+					sharedScans.put(source, group);
+					result.add(group);
+				}
+				group.add(checker);
+			} else {
+				if (source != null) {
+					_logger.warn("Unknown subject source '{}' for checker {}, using its own subjects.", source, checker);
+				}
+				result.add(Collections.singletonList(checker));
+			}
+		}
+
+		if (_timingHistory != null) {
+			result.sort(Comparator.comparingLong((List<C> group) -> {
+				long duration = getExpectedDuration(group);
+				return (duration < 0) ? Long.MAX_VALUE : duration;
+			}).reversed());
+		}
+
+		// Stable sort, keeping the longest first among the checkers of the same level.
+		CheckerGraph<C> graph = new CheckerGraph<>(checkers);
+		result.sort(Comparator.comparingInt(group -> group.stream().mapToInt(graph::getLevel).max().orElse(0)));
+		return result;
+	}
+
+	/** Returns the expected duration of a task from the timing history, or -1 if one of its checkers was never timed. */
+	private long getExpectedDuration(List<C> group) {
+		long result = 0L;
+		for (C checker : group) {
+			long duration = _timingHistory.getExpectedDuration(checker.getName());
+			if (duration < 0) {
+				return -1L;
+			}
+			// The checkers of a shared scan are all timed over the whole scan, so each one already records its duration.
+			result = Long.max(result, duration);
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the duration in milliseconds of the audit without running it, from the timing history and the number of
+	 * threads. The checkers never timed before are not accounted for.
+	 */
+	public long estimate() {
+		if (_timingHistory == null) {
+			throw new IllegalStateException("No timing history to estimate the audit duration.");
+		}
+		List<Long> durations = new ArrayList<>();
+		for (List<C> group : plan(getCheckers())) {
+			long duration = getExpectedDuration(group);
+			if (duration < 0) {
+				_logger.warn("No timing history for {}, not accounted in the estimate.", group);
+			}
+			durations.add(Long.max(0L, duration));
+		}
+		long result = TimingHistory.makespan(durations, _nbThreads);
+		_logger.debug("Audit {} estimated to {} on {} threads", _config.getName(), Chrono.getStrDuration(result),
+				_nbThreads);
+		return result;
+	}
+
+	/** Execute the whole life cycle of a checker, passing its defects to the consumer. */
+	protected void runChecker(C checker, AuditReport.CheckerReport checkerReport, Consumer<ADefect> consumer) {
+		checkerReport.start();
+		try (Stream<? extends ADefect> defects = checker.check(_parallelSubjects)) {
+			defects.forEach(defect -> {
+				checkerReport.addDefect();
+				consumer.accept(defect);
+			});
+		} catch (Exception e) {
+			_logger.error("Checker {} failed during the audit : {}", checker, Tools.getExceptionMessages(e));
+			checkerReport.fail(e);
+		} finally {
+			finish(checker, checkerReport);
+		}
+	}
+
+	private void finish(C checker, AuditReport.CheckerReport checkerReport) {
+		checkerReport.stop(checker._nbCheckedSubjects.get());
+		checkerReport.timeouts(checker.getStats().getNbTimeouts(), checker.isTripped());
+		checkerReport.sampled(checker.getSampleEstimate());
+		checkerReport.profiled(checker.getProfile());
+		// The consumers of an incomplete checker fail as well.
+		checker.closeDownstream(checkerReport.isFailed() ? checkerReport.getError()
+				: checker.isTripped() ? "disabled after timeouts" : null);
+	}
+
+	/**
+	 * Enumerate once the subjects of a registered source and dispatch each of them to all the checkers consuming it. A
+	 * checker failing on a subject, or disabled after too many timeouts, is excluded from the rest of the scan.
+	 */
+	protected void runSharedScan(String source, Map<C, AuditReport.CheckerReport> checkers, Consumer<ADefect> consumer) {
+
+		_logger.debug("Scanning subject source '{}' for {} checkers", source, checkers.size());
+
+		List<C> active = new ArrayList<>();
+		for (C checker : checkers.keySet()) {
+			AuditReport.CheckerReport checkerReport = checkers.get(checker);
+			checkerReport.start();
+			try {
+				checker.begin();
+				active.add(checker);
+			} catch (Exception e) {
+				_logger.error("Checker {} failed during the audit : {}", checker, Tools.getExceptionMessages(e));
+				checkerReport.fail(e);
+				checkerReport.stop(0);
+				checker.closeDownstream(checkerReport.getError());
+			}
+		}
+
+		// Subjects are dispatched concurrently only when all the checkers can be called from several threads.
+		List<C> scanned = new CopyOnWriteArrayList<>(active);
+		boolean parallel = _parallelSubjects && active.stream().allMatch(AChecker::isThreadSafe);
+
+		// The checkers of a shared scan share the same sample of subjects.
+		SamplingPlan.Sampler sampler = (_samplingPlan == null) ? null : _samplingPlan.newSampler();
+		if (sampler != null) {
+			active.forEach(checker -> checker.setSampleEstimate(new SampleEstimate(sampler)));
+		}
+
+		try (Stream<?> subjects = _config.getSubjectSource(source).get()) {
+			Stream<?> stream = (subjects == null) ? Stream.empty() : subjects;
+			stream = parallel ? stream.parallel() : stream;
+			(sampler != null ? sampler.sample(stream) : stream).forEach(subject -> {
+				for (C checker : scanned) {
+					try {
+						if (checker.isValidSubject(subject)) {
+							ADefect defect = checker.checkSubject(subject);
+							if (defect != null) {
+								checkers.get(checker).addDefect();
+								checker.produced(defect);
+								consumer.accept(defect);
+							}
+							if (checker.isTripped()) {
+								scanned.remove(checker);
+							}
+						}
+					} catch (ClassCastException e) {
+						_logger.error("Checker {} doesn't support the subjects of source '{}' : {}", checker, source,
+								Tools.getExceptionMessages(e));
+						checkers.get(checker).fail(e);
+						scanned.remove(checker);
+					}
+				}
+			});
+		} catch (Exception e) {
+			_logger.error("Scan of subject source '{}' failed : {}", source, Tools.getExceptionMessages(e));
+			active.forEach(checker -> checkers.get(checker).fail(e));
+		} finally {
+			for (C checker : active) {
+				AuditReport.CheckerReport checkerReport = checkers.get(checker);
+				try {
+					checker.end();
+				} catch (Exception e) {
+					_logger.error("Checker {} failed during the audit : {}", checker, Tools.getExceptionMessages(e));
+					checkerReport.fail(e);
+				}
+				finish(checker, checkerReport);
+			}
+		}
+	}
+
+	private void enqueue(BlockingQueue<ADefect> queue, ADefect defect) {
+		try {
+			queue.put(defect);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Audit interrupted while passing defects to the sink.", e);
+		}
+	}
+}
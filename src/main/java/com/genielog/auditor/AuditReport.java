@@ -0,0 +1,257 @@
+package com.genielog.auditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.genielog.tools.Chrono;
+import com.genielog.tools.Tools;
+
+/**
+ * The report of an audit executed by an {@link AuditEngine}: the overall duration and throughput, and the same figures
+ * for each checker.
+ */
+public class AuditReport {
+
+	/** The figures of a single checker during the audit. */
+	public static class CheckerReport {
+
+		private final String _name;
+		private final AtomicLong _nbSubjects = new AtomicLong();
+		private final AtomicLong _nbDefects = new AtomicLong();
+		private volatile long _startTime = 0L;
+		private volatile long _duration = 0L;
+		private volatile String _error = null;
+		private volatile long _nbTimeouts = 0L;
+		private volatile boolean _disabled = false;
+		private volatile SampleEstimate _sampleEstimate = null;
+		private volatile CheckerProfile _profile = null;
+
+		CheckerReport(String name) {
+			_name = name;
+		}
+
+		void start() {
+			_startTime = System.currentTimeMillis();
+		}
+
+		void stop(long nbSubjects) {
+			_nbSubjects.set(nbSubjects);
+			_duration = System.currentTimeMillis() - _startTime;
+		}
+
+		void timeouts(long nbTimeouts, boolean disabled) {
+			_nbTimeouts = nbTimeouts;
+			_disabled = disabled;
+		}
+
+		void sampled(SampleEstimate estimate) {
+			_sampleEstimate = estimate;
+		}
+
+		void profiled(CheckerProfile profile) {
+			_profile = profile;
+		}
+
+		void addDefect() {
+			_nbDefects.incrementAndGet();
+		}
+
+		void fail(Throwable e) {
+			_error = Tools.getExceptionMessages(e);
+		}
+
+		public String getName() {
+			return _name;
+		}
+
+		public long getNbSubjects() {
+			return _nbSubjects.get();
+		}
+
+		public long getNbDefects() {
+			return _nbDefects.get();
+		}
+
+		/** Wall clock duration of the checker in milliseconds. */
+		public long getDuration() {
+			return _duration;
+		}
+
+		/** Returns the number of subjects checked per seconds */
+		public double getChecksPerSeconds() {
+			return (_duration == 0) ? 0.0 : 1000. * _nbSubjects.get() / _duration;
+		}
+
+		/** Returns the reason why the checker failed, or null. */
+		public String getError() {
+			return _error;
+		}
+
+		public boolean isFailed() {
+			return _error != null;
+		}
+
+		/** Returns the estimate of the defects on all the subjects when only a sample was checked, or null. */
+		public SampleEstimate getSampleEstimate() {
+			return _sampleEstimate;
+		}
+
+		/** Returns the number of defects, estimated for all the subjects when only a sample was checked. */
+		public double getEstimatedDefects() {
+			return (_sampleEstimate == null) ? getNbDefects() : _sampleEstimate.getEstimatedDefects();
+		}
+
+		/** Returns the profile of the checks when the audit was profiled, or null. */
+		public CheckerProfile getProfile() {
+			return _profile;
+		}
+
+		/** Number of subjects whose check timed out. */
+		public long getNbTimeouts() {
+			return _nbTimeouts;
+		}
+
+		/** Returns true if the checker was disabled before the end of its subjects because of too many timeouts. */
+		public boolean isDisabled() {
+			return _disabled;
+		}
+
+		public String toString() {
+			return String.format("%-40s %10d subjects %8d defects in %s (%s checks/sec)%s%s%s%s",
+					_name, getNbSubjects(), getNbDefects(), Chrono.getStrDuration(_duration),
+					Tools.fmt(getChecksPerSeconds(), 1), (_sampleEstimate != null) ? " " + _sampleEstimate : "",
+					(_nbTimeouts > 0) ? " " + _nbTimeouts + " timeouts" : "",
+					_disabled ? " DISABLED" : "", isFailed() ? " FAILED: " + _error : "");
+		}
+	}
+
+	private final String _name;
+	private final List<CheckerReport> _checkers = Collections.synchronizedList(new ArrayList<>());
+	private final Chrono _duration = new Chrono();
+
+	public AuditReport(String name) {
+		_name = name;
+	}
+
+	CheckerReport add(String checkerName) {
+		CheckerReport result = new CheckerReport(checkerName);
+		_checkers.add(result);
+		return result;
+	}
+
+	void start() {
+		_duration.start();
+	}
+
+	void stop() {
+		_duration.stop();
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	public List<CheckerReport> getCheckers() {
+		synchronized (_checkers) {
+			return new ArrayList<>(_checkers);
+		}
+	}
+
+	public CheckerReport getChecker(String name) {
+		return getCheckers().stream().filter(c -> c.getName().equals(name)).findFirst().orElse(null);
+	}
+
+	/** Wall clock duration of the audit in milliseconds. */
+	public long getDuration() {
+		return _duration.elapsed();
+	}
+
+	public long getNbSubjects() {
+		return getCheckers().stream().mapToLong(CheckerReport::getNbSubjects).sum();
+	}
+
+	public long getNbDefects() {
+		return getCheckers().stream().mapToLong(CheckerReport::getNbDefects).sum();
+	}
+
+	/** Returns the number of defects, estimated for all the subjects of the checkers sampled. */
+	public double getEstimatedDefects() {
+		return getCheckers().stream().mapToDouble(CheckerReport::getEstimatedDefects).sum();
+	}
+
+	/** Returns true if some checkers checked only a sample of their subjects. */
+	public boolean isSampled() {
+		return getCheckers().stream().anyMatch(checker -> checker.getSampleEstimate() != null);
+	}
+
+	/** Returns the number of subjects checked per seconds, all checkers together. */
+	public double getChecksPerSeconds() {
+		long duration = getDuration();
+		return (duration == 0) ? 0.0 : 1000. * getNbSubjects() / duration;
+	}
+
+	public boolean isFailed() {
+		return getCheckers().stream().anyMatch(CheckerReport::isFailed);
+	}
+
+	/** Returns the profiled checkers, the ones with the longest cumulated checks first. */
+	private List<CheckerReport> getProfiledCheckers() {
+		return getCheckers().stream()
+				.filter(checker -> checker.getProfile() != null)
+				.sorted(Comparator.comparingLong(
+						(CheckerReport checker) -> checker.getProfile().getLatencies().getSum()).reversed())
+				.collect(Collectors.toList());
+	}
+
+	/** Returns the JSON profiling report of a profiled audit. */
+	public ObjectNode getProfileJson() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("audit", _name);
+		result.put("duration-ms", getDuration());
+		result.put("checks-per-second", getChecksPerSeconds());
+		ArrayNode checkers = result.putArray("checkers");
+		for (CheckerReport checker : getProfiledCheckers()) {
+			ObjectNode node = checker.getProfile().toJson();
+			node.put("duration-ms", checker.getDuration());
+			node.put("subjects", checker.getNbSubjects());
+			node.put("defects", checker.getNbDefects());
+			node.put("checks-per-second", checker.getChecksPerSeconds());
+			checkers.add(node);
+		}
+		return result;
+	}
+
+	/** Returns the text profiling report of a profiled audit. */
+	public String getProfileText() {
+		StringBuilder sb = new StringBuilder();
+		for (CheckerReport checker : getProfiledCheckers()) {
+			CheckerProfile profile = checker.getProfile();
+			sb.append(String.format("%s: %s checks/sec, %s%n", checker.getName(),
+					Tools.fmt(checker.getChecksPerSeconds(), 1), profile.getLatencies()));
+			sb.append(profile.getDetails());
+		}
+		return sb.toString();
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Audit %s: %d checkers, %d subjects, %d defects in %s (%s checks/sec)%n",
+				_name, getCheckers().size(), getNbSubjects(), getNbDefects(), _duration,
+				Tools.fmt(getChecksPerSeconds(), 1)));
+		if (isSampled()) {
+			sb.append(String.format("  Sampled audit: ~%s defects estimated on all the subjects%n",
+					Tools.fmt(getEstimatedDefects(), 1)));
+		}
+		for (CheckerReport checker : getCheckers()) {
+			sb.append("  - ").append(checker).append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,284 @@
+package com.genielog.auditor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.genielog.tools.Tools;
+
+/**
+ * A compiled bundle of checker definitions, for a fast start of short-lived audits. <br>
+ * The bundle stores, in a single binary file, the JSON definition of each checker already parsed, with its resolved
+ * class name, and a header with a stamp of each source definition (modification time and size for files, CRC and size
+ * of the archive entry for resources). The bundle is memory-mapped and decoded without any text parsing; it is stale
+ * as soon as the list of source definitions or one of their stamps changes. It is written to a temporary file first,
+ * then moved in place, so a concurrent audit never reads a partial bundle.
+ */
+public class CheckerBundle {
+
+	protected static Logger logger = LogManager.getLogger(CheckerBundle.class);
+
+	private static final int MAGIC = 0x474C4342; // "GLCB"
+	private static final int VERSION = 2;
+
+	// Tags of the encoded JSON nodes.
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte TEXT = 5;
+	private static final byte ARRAY = 6;
+	private static final byte OBJECT = 7;
+	private static final byte BIG_INTEGER = 8;
+	private static final byte BIG_DECIMAL = 9;
+	private static final byte BINARY = 10;
+
+	/** A compiled checker definition. */
+	public static class Entry {
+
+		public final String location;
+		public final String className;
+		public final JsonNode definition;
+
+		public Entry(String location, String className, JsonNode definition) {
+			this.location = location;
+			this.className = className;
+			this.definition = definition;
+		}
+	}
+
+	private final List<String> _locations;
+	private final List<String> _stamps;
+	private final List<Entry> _entries;
+
+	private CheckerBundle(List<String> locations, List<String> stamps, List<Entry> entries) {
+		_locations = locations;
+		_stamps = stamps;
+		_entries = entries;
+	}
+
+	/** Returns true if the bundle was compiled from the same source definitions with the same stamps. */
+	public boolean isUpToDate(List<String> locations, List<String> stamps) {
+		return _locations.equals(locations) && _stamps.equals(stamps);
+	}
+
+	/** The compiled definitions, in the order of their sources. */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(_entries);
+	}
+
+	// ******************************************************************************************************************
+	// Writing
+	// ******************************************************************************************************************
+
+	/**
+	 * Writes a bundle of the given definitions, compiled from the sources with the given stamps, and replaces the
+	 * previous one atomically.
+	 */
+	public static void write(File file, List<String> locations, List<String> stamps, List<Entry> entries)
+			throws IOException {
+		if (locations.size() != stamps.size()) {
+			throw new IllegalArgumentException("Each source location of a checker bundle must have a stamp.");
+		}
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try {
+			writeEntries(temp, locations, stamps, entries);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			if (temp.exists() && !temp.delete()) {
+				logger.warn("Unable to remove temporary checker bundle {}", temp.getAbsolutePath());
+			}
+			throw e;
+		}
+		logger.debug("Checker bundle {} written with {} definitions.", file.getName(), entries.size());
+	}
+
+	private static void writeEntries(File file, List<String> locations, List<String> stamps, List<Entry> entries)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(locations.size());
+			for (int i = 0; i < locations.size(); i++) {
+				writeString(out, locations.get(i));
+				writeString(out, stamps.get(i));
+			}
+			out.writeInt(entries.size());
+			for (Entry entry : entries) {
+				writeString(out, entry.location);
+				writeString(out, entry.className);
+				writeNode(out, entry.definition);
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeNode(DataOutputStream out, JsonNode node) throws IOException {
+		if ((node == null) || node.isNull() || node.isMissingNode()) {
+			out.writeByte(NULL);
+		} else if (node.isBoolean()) {
+			out.writeByte(node.booleanValue() ? TRUE : FALSE);
+		} else if (node.isIntegralNumber() && node.canConvertToLong()) {
+			out.writeByte(LONG);
+			out.writeLong(node.longValue());
+		} else if (node.isBigInteger()) {
+			out.writeByte(BIG_INTEGER);
+			writeString(out, node.bigIntegerValue().toString());
+		} else if (node.isBigDecimal()) {
+			out.writeByte(BIG_DECIMAL);
+			writeString(out, node.decimalValue().toString());
+		} else if (node.isNumber()) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(node.doubleValue());
+		} else if (node.isBinary()) {
+			byte[] bytes = node.binaryValue();
+			out.writeByte(BINARY);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} else if (node.isArray()) {
+			out.writeByte(ARRAY);
+			out.writeInt(node.size());
+			for (JsonNode item : node) {
+				writeNode(out, item);
+			}
+		} else if (node.isObject()) {
+			out.writeByte(OBJECT);
+			out.writeInt(node.size());
+			Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				writeString(out, field.getKey());
+				writeNode(out, field.getValue());
+			}
+		} else if (node.isTextual()) {
+			out.writeByte(TEXT);
+			writeString(out, node.textValue());
+		} else {
+			throw new IllegalArgumentException(
+					"A " + node.getNodeType() + " JSON node can't be written in a checker bundle.");
+		}
+	}
+
+	// ******************************************************************************************************************
+	// Reading
+	// ******************************************************************************************************************
+
+	/** Memory-maps and decodes a bundle, returns null if the file doesn't exist or is not a valid bundle. */
+	public static CheckerBundle read(File file) {
+		if ((file == null) || !file.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+				logger.warn("Ignoring {} which is not a checker bundle of version {}.", file.getAbsolutePath(), VERSION);
+				return null;
+			}
+
+			int nbSources = buffer.getInt();
+			List<String> locations = new ArrayList<>(nbSources);
+			List<String> stamps = new ArrayList<>(nbSources);
+			for (int i = 0; i < nbSources; i++) {
+				locations.add(readString(buffer));
+				stamps.add(readString(buffer));
+			}
+
+			int nbEntries = buffer.getInt();
+			List<Entry> entries = new ArrayList<>(nbEntries);
+			for (int i = 0; i < nbEntries; i++) {
+				String location = readString(buffer);
+				String className = readString(buffer);
+				entries.add(new Entry(location, className, readNode(buffer)));
+			}
+			return new CheckerBundle(locations, stamps, entries);
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			logger.error("Unable to read checker bundle {} : {}", file.getAbsolutePath(), Tools.getExceptionMessages(e));
+			return null;
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static JsonNode readNode(ByteBuffer buffer) {
+		JsonNodeFactory factory = JsonNodeFactory.instance;
+		byte tag = buffer.get();
+		switch (tag) {
+			case NULL:
+				return factory.nullNode();
+			case TRUE:
+				return factory.booleanNode(true);
+			case FALSE:
+				return factory.booleanNode(false);
+			case LONG: {
+				long value = buffer.getLong();
+				return (value == (int) value) ? factory.numberNode((int) value) : factory.numberNode(value);
+			}
+			case DOUBLE:
+				return factory.numberNode(buffer.getDouble());
+			case BIG_INTEGER:
+				return factory.numberNode(new BigInteger(readString(buffer)));
+			case BIG_DECIMAL:
+				return DecimalNode.valueOf(new BigDecimal(readString(buffer)));
+			case BINARY: {
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				return factory.binaryNode(bytes);
+			}
+			case TEXT:
+				return factory.textNode(readString(buffer));
+			case ARRAY: {
+				int size = buffer.getInt();
+				ArrayNode result = factory.arrayNode(size);
+				for (int i = 0; i < size; i++) {
+					result.add(readNode(buffer));
+				}
+				return result;
+			}
+			case OBJECT: {
+				int size = buffer.getInt();
+				ObjectNode result = factory.objectNode();
+				for (int i = 0; i < size; i++) {
+					String key = readString(buffer);
+					result.set(key, readNode(buffer));
+				}
+				return result;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown tag " + tag + " in checker bundle.");
+		}
+	}
+}
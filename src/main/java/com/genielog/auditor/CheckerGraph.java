@@ -0,0 +1,108 @@
+package com.genielog.auditor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The graph of the dependencies between checkers, declared by the names of their producers in their "depends-on"
+ * property. <br>
+ * The graph must be acyclic: each checker gets a level, 0 for the checkers without dependencies and one more than the
+ * highest level of its producers otherwise, and the checkers sorted by level are in a topological order. Dependencies
+ * on checkers not in the graph are ignored with a warning.
+ *
+ * @param <C>
+ *          The type of the checkers
+ */
+@SuppressWarnings("rawtypes")
+public class CheckerGraph<C extends AChecker> {
+
+	protected static Logger logger = LogManager.getLogger(CheckerGraph.class);
+
+	private final Map<String, C> _checkers = new LinkedHashMap<>();
+	private final Map<C, List<C>> _producers = new LinkedHashMap<>();
+	private final Map<C, List<C>> _consumers = new LinkedHashMap<>();
+	private final Map<C, Integer> _levels = new LinkedHashMap<>();
+
+	/**
+	 * Builds the graph of the given checkers.
+	 *
+	 * @throws IllegalStateException
+	 *           if the dependencies contain a cycle
+	 */
+	public CheckerGraph(Collection<C> checkers) {
+		for (C checker : checkers) {
+			_checkers.put(checker.getName(), checker);
+			_producers.put(checker, new ArrayList<>());
+			_consumers.put(checker, new ArrayList<>());
+		}
+		for (C checker : checkers) {
+			for (Object name : checker.getDependencies()) {
+				C producer = _checkers.get(name);
+				if (producer == null) {
+					logger.warn("Checker {} depends on {} which is not part of the audit.", checker, name);
+				} else {
+					_producers.get(checker).add(producer);
+					_consumers.get(producer).add(checker);
+				}
+			}
+		}
+		for (C checker : checkers) {
+			computeLevel(checker, new ArrayList<>());
+		}
+	}
+
+	/** Depth first computation of the level of a checker, path holding the consumers being computed. */
+	private int computeLevel(C checker, List<C> path) {
+		Integer result = _levels.get(checker);
+		if (result == null) {
+			if (path.contains(checker)) {
+				List<C> cycle = new ArrayList<>(path.subList(path.indexOf(checker), path.size()));
+				cycle.add(checker);
+				throw new IllegalStateException("Cycle in the dependencies of the checkers : " + cycle);
+			}
+			path.add(checker);
+			int level = 0;
+			for (C producer : _producers.get(checker)) {
+				level = Integer.max(level, computeLevel(producer, path) + 1);
+			}
+			path.remove(path.size() - 1);
+			result = level;
+			_levels.put(checker, result);
+		}
+		return result;
+	}
+
+	/** Returns the checker of the graph with the given name, or null. */
+	public C getChecker(String name) {
+		return _checkers.get(name);
+	}
+
+	/** Returns the checkers the given one depends on. */
+	public List<C> getProducers(C checker) {
+		return Collections.unmodifiableList(_producers.getOrDefault(checker, Collections.emptyList()));
+	}
+
+	/** Returns the checkers depending on the given one. */
+	public List<C> getConsumers(C checker) {
+		return Collections.unmodifiableList(_consumers.getOrDefault(checker, Collections.emptyList()));
+	}
+
+	/** Returns the level of the checker in the graph, 0 for a checker without dependencies, or -1 if it's unknown. */
+	public int getLevel(C checker) {
+		return _levels.getOrDefault(checker, -1);
+	}
+
+	/** Returns the checkers sorted by level, so each checker comes after all its producers. */
+	public List<C> sort() {
+		List<C> result = new ArrayList<>(_producers.keySet());
+		result.sort((c1, c2) -> Integer.compare(getLevel(c1), getLevel(c2)));
+		return result;
+	}
+}
@@ -0,0 +1,177 @@
+package com.genielog.auditor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.genielog.tools.LatencyHistogram;
+import com.genielog.tools.Tools;
+
+/**
+ * The profile of the checks of a checker during an audit: the histogram of the durations of its checks, its slowest
+ * subjects and the exceptions raised by its checks. <br>
+ * For a low overhead, only one check out of sampleEvery is recorded in the histogram, and the key of a subject is only
+ * computed when its check is slower than the fastest of the slowest subjects already kept. The exceptions are all
+ * counted.
+ */
+public class CheckerProfile {
+
+	/** A subject among the slowest ones of a checker. */
+	public static class SlowSubject {
+
+		public final String subject;
+		public final long nanos;
+		public final String exception;
+
+		SlowSubject(String subject, long nanos, String exception) {
+			this.subject = subject;
+			this.nanos = nanos;
+			this.exception = exception;
+		}
+
+		public String toString() {
+			return String.format("%10s ms %s%s", Tools.fmt(nanos / 1e6, 3), subject,
+					(exception != null) ? " (" + exception + ")" : "");
+		}
+	}
+
+	private final String _name;
+	private final int _nbSlowest;
+	private final int _sampleEvery;
+
+	private final LatencyHistogram _latencies = new LatencyHistogram();
+	private final Map<String, LongAdder> _exceptions = new ConcurrentHashMap<>();
+
+	// The slowest subjects, the fastest of them first, and its duration once nbSlowest subjects are kept.
+	private final PriorityQueue<SlowSubject> _slowest = new PriorityQueue<>(
+			Comparator.comparingLong((SlowSubject slow) -> slow.nanos));
+	private volatile long _threshold = -1L;
+
+	public CheckerProfile(String name, int nbSlowest, int sampleEvery) {
+		if ((nbSlowest < 0) || (sampleEvery <= 0)) {
+			throw new IllegalArgumentException(
+					"Invalid number of slowest subjects " + nbSlowest + " or sampling " + sampleEvery);
+		}
+		_name = name;
+		_nbSlowest = nbSlowest;
+		_sampleEvery = sampleEvery;
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/** Record the check of a subject, which took the given time and failed with the given exception or not. */
+	public <S> void record(AChecker<S, ?> checker, S subject, long nanos, Throwable error) {
+		if ((_sampleEvery == 1) || (ThreadLocalRandom.current().nextInt(_sampleEvery) == 0)) {
+			_latencies.record(nanos);
+		}
+		String exception = (error == null) ? null : error.getClass().getSimpleName();
+		if (exception != null) {
+			_exceptions.computeIfAbsent(exception, key -> new LongAdder()).increment();
+		}
+		if ((_nbSlowest > 0) && (nanos > _threshold)) {
+			addSlowest(checker.getSubjectKey(subject), nanos, exception);
+		}
+	}
+
+	/** Record the check of a batch of subjects, each one accounted with the average duration of the batch. */
+	public <S> void recordBatch(AChecker<S, ?> checker, List<S> subjects, long nanos) {
+		long average = nanos / subjects.size();
+		for (int i = 0; i < subjects.size(); i++) {
+			if ((_sampleEvery == 1) || (ThreadLocalRandom.current().nextInt(_sampleEvery) == 0)) {
+				_latencies.record(average);
+			}
+		}
+		if ((_nbSlowest > 0) && (nanos > _threshold)) {
+			addSlowest(checker.getSubjectKey(subjects.get(0)) + " (batch of " + subjects.size() + ")", nanos, null);
+		}
+	}
+
+	private synchronized void addSlowest(String subject, long nanos, String exception) {
+		if (nanos > _threshold) {
+			_slowest.add(new SlowSubject(subject, nanos, exception));
+			if (_slowest.size() > _nbSlowest) {
+				_slowest.poll();
+			}
+			if (_slowest.size() == _nbSlowest) {
+				_threshold = _slowest.peek().nanos;
+			}
+		}
+	}
+
+	/** Returns the histogram of the durations of the checks recorded, in nanoseconds. */
+	public LatencyHistogram getLatencies() {
+		return _latencies;
+	}
+
+	/** Returns the slowest subjects, the slowest first. */
+	public synchronized List<SlowSubject> getSlowest() {
+		List<SlowSubject> result = new ArrayList<>(_slowest);
+		result.sort(Comparator.comparingLong((SlowSubject slow) -> slow.nanos).reversed());
+		return result;
+	}
+
+	/** Returns the number of exceptions raised by the checks, by simple class name. */
+	public Map<String, Long> getExceptions() {
+		Map<String, Long> result = new TreeMap<>();
+		_exceptions.forEach((exception, count) -> result.put(exception, count.sum()));
+		return result;
+	}
+
+	// ******************************************************************************************************************
+	// Reports
+	// ******************************************************************************************************************
+
+	public ObjectNode toJson() {
+		JsonNodeFactory factory = JsonNodeFactory.instance;
+		ObjectNode result = factory.objectNode();
+		result.put("checker-name", _name);
+		result.put("sample-every", _sampleEvery);
+		ObjectNode latencies = result.putObject("latencies-ms");
+		latencies.put("count", _latencies.getCount());
+		latencies.put("mean", _latencies.getMean() / 1e6);
+		latencies.put("p50", _latencies.getPercentile(0.50) / 1e6);
+		latencies.put("p90", _latencies.getPercentile(0.90) / 1e6);
+		latencies.put("p99", _latencies.getPercentile(0.99) / 1e6);
+		latencies.put("max", _latencies.getMax() / 1e6);
+		ObjectNode exceptions = result.putObject("exceptions");
+		getExceptions().forEach(exceptions::put);
+		ArrayNode slowest = result.putArray("slowest");
+		for (SlowSubject slow : getSlowest()) {
+			ObjectNode node = slowest.addObject();
+			node.put("subject", slow.subject);
+			node.put("duration-ms", slow.nanos / 1e6);
+			if (slow.exception != null) {
+				node.put("exception", slow.exception);
+			}
+		}
+		return result;
+	}
+
+	public String toString() {
+		return String.format("%s: %s%n", _name, _latencies) + getDetails();
+	}
+
+	/** Returns the exceptions and the slowest subjects, one per line. */
+	String getDetails() {
+		StringBuilder sb = new StringBuilder();
+		Map<String, Long> exceptions = getExceptions();
+		if (!exceptions.isEmpty()) {
+			sb.append(String.format("    exceptions: %s%n", exceptions));
+		}
+		for (SlowSubject slow : getSlowest()) {
+			sb.append("    ").append(slow).append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,166 @@
+package com.genielog.auditor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.genielog.tools.Tools;
+
+/**
+ * Resolves the class names of the checker definitions to checker classes, and creates their instances. <br>
+ * The classes found, the class names not found and the constructors are cached, so each class name is looked up at
+ * most once in each package, and checkers are created through a method handle on their public no-argument
+ * constructor, or by reflection when their package is not open to this module. <br>
+ * Checker classes can also be registered explicitly or, for module path deployments, as providers of the AChecker
+ * service: they are then resolved by their simple name without any package lookup, and created by the service loader.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class CheckerRegistry {
+
+	protected static Logger logger = LogManager.getLogger(CheckerRegistry.class);
+
+	private static CheckerRegistry sDefault = null;
+
+	// Checker classes registered explicitly, by simple and full name.
+	private final Map<String, Class<? extends AChecker>> _registered = new ConcurrentHashMap<>();
+
+	// Classes already found by their full name, and full names not found.
+	private final Map<String, Class<?>> _found = new ConcurrentHashMap<>();
+	private final Set<String> _notFound = ConcurrentHashMap.newKeySet();
+
+	// Factories of the checker instances, by class.
+	private final Map<Class<?>, Callable<?>> _factories = new ConcurrentHashMap<>();
+
+	private final ClassLoader _classLoader;
+
+	/** Returns the registry shared by all the configurations, with the checkers provided as services. */
+	public static synchronized CheckerRegistry getDefault() {
+		if (sDefault == null) {
+			sDefault = new CheckerRegistry(CheckerRegistry.class.getClassLoader());
+			sDefault.loadServices();
+		}
+		return sDefault;
+	}
+
+	public CheckerRegistry(ClassLoader classLoader) {
+		_classLoader = (classLoader != null) ? classLoader : ClassLoader.getSystemClassLoader();
+	}
+
+	/** Register a checker class, resolved by its simple and full names. */
+	public CheckerRegistry register(Class<? extends AChecker> checkerClass) {
+		if (checkerClass == null) {
+			throw new IllegalArgumentException("Undefined checker class to register.");
+		}
+		_registered.put(checkerClass.getSimpleName(), checkerClass);
+		_registered.put(checkerClass.getName(), checkerClass);
+		_notFound.remove(checkerClass.getName());
+		return this;
+	}
+
+	/** Register the checker classes declared as providers of the AChecker service, without instantiating them. */
+	public int loadServices() {
+		int result = 0;
+		try {
+			for (ServiceLoader.Provider<AChecker> provider : (Iterable<ServiceLoader.Provider<AChecker>>) ServiceLoader
+					.load(AChecker.class, _classLoader).stream()::iterator) {
+				register(provider.type());
+				_factories.put(provider.type(), provider::get);
+				result++;
+			}
+		} catch (ServiceConfigurationError e) {
+			logger.error("Unable to load checker services : {}", Tools.getExceptionMessages(e));
+		}
+		logger.debug("{} checker classes registered as services.", result);
+		return result;
+	}
+
+	/**
+	 * Returns the checker class for a class name, either registered or found in one of the packages, or null. A full
+	 * class name is looked up as is.
+	 */
+	public Class<? extends AChecker> resolve(String className, List<String> packages) {
+		Class<? extends AChecker> result = _registered.get(className);
+		if (result == null) {
+			if (className.indexOf('.') >= 0) {
+				result = findClass(className);
+			}
+			for (int i = 0; (result == null) && (packages != null) && (i < packages.size()); i++) {
+				result = findClass(packages.get(i) + "." + className);
+			}
+		}
+		return result;
+	}
+
+	/** Returns the checker class of the given full name, or null if it doesn't exist or is not a checker. */
+	private Class<? extends AChecker> findClass(String fullClassName) {
+		Class<?> result = _found.get(fullClassName);
+		if ((result == null) && !_notFound.contains(fullClassName)) {
+			try {
+				result = Class.forName(fullClassName, false, _classLoader);
+				_found.put(fullClassName, result);
+			} catch (ClassNotFoundException | LinkageError e) {
+				logger.debug("Checker class {} not found", fullClassName);
+				_notFound.add(fullClassName);
+			}
+		}
+		return ((result != null) && AChecker.class.isAssignableFrom(result)) ? (Class<? extends AChecker>) result : null;
+	}
+
+	/**
+	 * Creates a new instance of a checker class with its public no-argument constructor, or with the service loader for
+	 * the checkers provided as services.
+	 */
+	public <C extends AChecker> C newInstance(Class<C> checkerClass) {
+		Callable<?> factory = _factories.computeIfAbsent(checkerClass, this::findFactory);
+		try {
+			return (C) factory.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Unable to create checker of class " + checkerClass.getName(), e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to create checker of class " + checkerClass.getName(), e);
+		}
+	}
+
+	/**
+	 * Returns a factory calling the public no-argument constructor of a class, through a method handle when this module
+	 * has a private access to its package, otherwise by reflection.
+	 */
+	private Callable<?> findFactory(Class<?> checkerClass) {
+		Constructor<?> constructor;
+		try {
+			constructor = checkerClass.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(
+					"No public constructor without argument for checker class " + checkerClass.getName(), e);
+		}
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.privateLookupIn(checkerClass, MethodHandles.lookup()).unreflectConstructor(constructor);
+		} catch (IllegalAccessException | SecurityException e) {
+			logger.debug("No method handle on the constructor of {}, created by reflection.", checkerClass.getName());
+			return constructor::newInstance;
+		}
+		return () -> {
+			try {
+				return handle.invoke();
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new InvocationTargetException(e);
+			}
+		};
+	}
+}
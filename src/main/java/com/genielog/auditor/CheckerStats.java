@@ -0,0 +1,95 @@
+package com.genielog.auditor;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe statistics of the subjects checked by a checker. <br>
+ * The durations are cumulated over all the threads checking subjects, so with a parallel check they can be larger than
+ * the wall clock duration of the check.
+ */
+public class CheckerStats implements Serializable {
+
+	private static final long serialVersionUID = 2871935604381247816L;
+
+	private final LongAdder _nbChecks = new LongAdder();
+	private final LongAdder _nbErrors = new LongAdder();
+	private final LongAdder _nanos = new LongAdder();
+	private final LongAdder _nbCached = new LongAdder();
+	private final LongAdder _nbTimeouts = new LongAdder();
+
+	/** Record the check of a subject, which took the given time and failed or not. */
+	public void record(long nanos, boolean failed) {
+		_nbChecks.increment();
+		_nanos.add(nanos);
+		if (failed) {
+			_nbErrors.increment();
+		}
+	}
+
+	/** Record a subject whose defect was replayed from the cache instead of being checked. */
+	public void recordCached() {
+		_nbCached.increment();
+	}
+
+	/** Record a subject whose check was interrupted because it lasted too long. */
+	public void recordTimeout() {
+		_nbTimeouts.increment();
+	}
+
+	public void reset() {
+		_nbTimeouts.reset();
+		_nbCached.reset();
+		_nbChecks.reset();
+		_nbErrors.reset();
+		_nanos.reset();
+	}
+
+	/** Number of subjects checked. */
+	public long getNbChecks() {
+		return _nbChecks.sum();
+	}
+
+	/** Number of subjects whose result was replayed from the cache. */
+	public long getNbCached() {
+		return _nbCached.sum();
+	}
+
+	/** Number of subjects on which the check failed with an exception. */
+	public long getNbErrors() {
+		return _nbErrors.sum();
+	}
+
+	/** Number of subjects whose check timed out. */
+	public long getNbTimeouts() {
+		return _nbTimeouts.sum();
+	}
+
+	/** Cumulated duration of the checks in nanoseconds. */
+	public long getNanos() {
+		return _nanos.sum();
+	}
+
+	/** Cumulated duration of the checks in milliseconds. */
+	public long getDuration() {
+		return TimeUnit.NANOSECONDS.toMillis(getNanos());
+	}
+
+	/** Average duration of a check in milliseconds. */
+	public double getAvgDuration() {
+		long nbChecks = getNbChecks();
+		return (nbChecks == 0) ? 0.0 : getNanos() / 1e6 / nbChecks;
+	}
+
+	/** Number of subjects checked per second of cumulated check time. */
+	public double getChecksPerSeconds() {
+		long nanos = getNanos();
+		return (nanos == 0) ? 0.0 : 1e9 * getNbChecks() / nanos;
+	}
+
+	public String toString() {
+		return String.format("%d checks, %d cached, %d errors, %d timeouts, avg %.3f ms", getNbChecks(), getNbCached(),
+				getNbErrors(), getNbTimeouts(), getAvgDuration());
+	}
+}
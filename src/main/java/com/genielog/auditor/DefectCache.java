@@ -0,0 +1,198 @@
+package com.genielog.auditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.genielog.tools.Tools;
+import com.google.common.hash.Hashing;
+
+/**
+ * The on-disk cache of the defects found by a checker, for incremental audits. <br>
+ * For each subject, the cache records the fingerprint of the subject when it was checked and the resulting defect, if
+ * any. When the subject is checked again with the same fingerprint, the cached defect is replayed instead of calling
+ * doCheck(). <br>
+ * The cache file of a checker is named after its name, made safe for a file name, and its configuration hash, so
+ * changing the parameters, the version or the class of the checker starts from an empty cache. Only the subjects
+ * checked during the last audit are saved, so subjects which disappeared are dropped from the cache. The file is
+ * replaced atomically, so an interrupted save keeps the previous cache.
+ */
+@SuppressWarnings({ "rawtypes" })
+public class DefectCache {
+
+	protected static Logger logger = LogManager.getLogger(DefectCache.class);
+
+	private static final String EXTENSION = ".defects";
+
+	/** The result of the check of a subject, with the fingerprint of the subject at that time. */
+	static class Entry implements Serializable {
+
+		private static final long serialVersionUID = -1843052764163580371L;
+
+		final String fingerprint;
+		final ADefect defect;
+
+		Entry(String fingerprint, ADefect defect) {
+			this.fingerprint = fingerprint;
+			this.defect = defect;
+		}
+	}
+
+	private final File _file;
+	private final AChecker _checker;
+
+	// The entries loaded from the file, read only during the audit.
+	private final Map<String, Entry> _previous = new HashMap<>();
+
+	// The entries of the subjects checked during the current audit.
+	private final Map<String, Entry> _current = new ConcurrentHashMap<>();
+
+	private final LongAdder _hits = new LongAdder();
+	private final LongAdder _misses = new LongAdder();
+
+	/**
+	 * Opens the cache of the given checker in a directory, removing the caches of previous configurations of the same
+	 * checker.
+	 */
+	public static DefectCache open(File directory, AChecker checker) {
+		if ((directory == null) || (checker == null)) {
+			throw new IllegalArgumentException("Undefined directory or checker for the defect cache.");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Unable to create defect cache directory " + directory.getAbsolutePath());
+		}
+
+		String prefix = fileName(checker.getName());
+		String filename = prefix + "-" + checker.getConfigHash() + EXTENSION;
+
+		// Only the caches of this very checker, not of the ones with a name starting with its name.
+		Pattern pattern = Pattern.compile(Pattern.quote(prefix) + "-[0-9a-f]{32}" + Pattern.quote(EXTENSION));
+		File[] obsoletes = directory.listFiles(
+				(dir, name) -> pattern.matcher(name).matches() && !name.equals(filename));
+		if (obsoletes != null) {
+			for (File obsolete : obsoletes) {
+				logger.debug("Removing obsolete defect cache {}", obsolete.getName());
+				if (!obsolete.delete()) {
+					logger.warn("Unable to remove obsolete defect cache {}", obsolete.getAbsolutePath());
+				}
+			}
+		}
+
+		DefectCache result = new DefectCache(new File(directory, filename), checker);
+		result.load();
+		return result;
+	}
+
+	/**
+	 * Returns the name of a checker usable in a file name: unsafe characters are replaced, and the hash of the name is
+	 * appended when it has been changed, so two checkers don't share a cache file.
+	 */
+	static String fileName(String checkerName) {
+		String result = String.valueOf(checkerName).replaceAll("[^A-Za-z0-9._-]", "_");
+		if (!result.equals(checkerName) || result.startsWith(".")) {
+			result += "~" + Hashing.murmur3_32().hashString(String.valueOf(checkerName), StandardCharsets.UTF_8);
+		}
+		return result;
+	}
+
+	protected DefectCache(File file, AChecker checker) {
+		_file = file;
+		_checker = checker;
+	}
+
+	public File getFile() {
+		return _file;
+	}
+
+	/**
+	 * Returns the cached result for a subject if its fingerprint didn't change: an entry with the defect, possibly null
+	 * when the subject had no defect. Returns null on a cache miss.
+	 */
+	@SuppressWarnings("unchecked")
+	Entry lookup(String key, String fingerprint) {
+		Entry entry = _previous.get(key);
+		if ((entry != null) && entry.fingerprint.equals(fingerprint)) {
+			_hits.increment();
+			if (entry.defect != null) {
+				entry.defect.attach(_checker);
+			}
+			_current.put(key, entry);
+			return entry;
+		}
+		_misses.increment();
+		return null;
+	}
+
+	/** Records the result of the check of a subject. */
+	void put(String key, String fingerprint, ADefect defect) {
+		_current.put(key, new Entry(fingerprint, defect));
+	}
+
+	public long getHits() {
+		return _hits.sum();
+	}
+
+	public long getMisses() {
+		return _misses.sum();
+	}
+
+	public int size() {
+		return _current.size();
+	}
+
+	// ******************************************************************************************************************
+	// Persistence
+	// ******************************************************************************************************************
+
+	@SuppressWarnings("unchecked")
+	protected void load() {
+		if (_file.isFile()) {
+			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(_file)))) {
+				_previous.putAll((Map<String, Entry>) ois.readObject());
+				logger.debug("Loaded {} cached subjects from {}", _previous.size(), _file.getName());
+			} catch (IOException | ClassNotFoundException | ClassCastException e) {
+				logger.error("Unable to load defect cache from {} : {}", _file.getAbsolutePath(),
+						Tools.getExceptionMessages(e));
+				_previous.clear();
+			}
+		}
+	}
+
+	/** Saves the results of the subjects checked during the current audit, returns false on failure. */
+	public boolean save() {
+		boolean result = true;
+		File temp = new File(_file.getParentFile(), _file.getName() + ".tmp");
+		try {
+			try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				oos.writeObject(new HashMap<>(_current));
+			}
+			Files.move(temp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.debug("Saved {} cached subjects in {} ({} hits, {} misses)", _current.size(), _file.getName(),
+					getHits(), getMisses());
+		} catch (IOException e) {
+			logger.error("Unable to save defect cache in {} : {}", _file.getAbsolutePath(), Tools.getExceptionMessages(e));
+			if (temp.exists() && !temp.delete()) {
+				logger.warn("Unable to remove temporary defect cache {}", temp.getAbsolutePath());
+			}
+			result = false;
+		}
+		return result;
+	}
+}
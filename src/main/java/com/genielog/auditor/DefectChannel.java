@@ -0,0 +1,100 @@
+package com.genielog.auditor;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Passes the defects and artifacts published by a checker to one of the checkers depending on it, while both are
+ * running. <br>
+ * The channel is unbounded so a producer never waits for its consumers, and it is closed by the audit engine when the
+ * producer terminates. A consumer reading a channel waits for the next item until then, and gets an
+ * IllegalStateException at the end of the items if the producer failed.
+ */
+public class DefectChannel {
+
+	// Marks the end of the items in the queue.
+	private static final Object END = new Object();
+
+	private final String _producer;
+	private final BlockingQueue<Object> _queue = new LinkedBlockingQueue<>();
+	private volatile boolean _closed = false;
+	private volatile String _error = null;
+
+	public DefectChannel(String producer) {
+		_producer = producer;
+	}
+
+	/** Returns the name of the checker publishing in this channel. */
+	public String getProducer() {
+		return _producer;
+	}
+
+	/** Publish a defect or an artifact to the consumer. */
+	public void publish(Object item) {
+		if (item == null) {
+			throw new IllegalArgumentException("Can't publish a null item in the channel of " + _producer);
+		}
+		if (_closed) {
+			throw new IllegalStateException("Channel of " + _producer + " already closed.");
+		}
+		_queue.add(item);
+	}
+
+	/** Close the channel at the end of the producer, with the reason why it failed or null. */
+	public synchronized void close(String error) {
+		if (!_closed) {
+			_error = error;
+			_closed = true;
+			_queue.add(END);
+		}
+	}
+
+	public boolean isClosed() {
+		return _closed;
+	}
+
+	/** Returns the items published until the channel is closed, waiting for each of them. Can be read only once. */
+	public Stream<Object> stream() {
+		Iterator<Object> items = new Iterator<Object>() {
+
+			private Object _next = null;
+
+			@Override
+			public boolean hasNext() {
+				if (_next == null) {
+					try {
+						_next = _queue.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("Interrupted while waiting for the defects of " + _producer, e);
+					}
+				}
+				if (_next == END) {
+					if (_error != null) {
+						throw new IllegalStateException("Checker " + _producer + " failed : " + _error);
+					}
+					return false;
+				}
+				return true;
+			}
+
+			@Override
+			public Object next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Object result = _next;
+				_next = null;
+				return result;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED | Spliterator.NONNULL),
+				false);
+	}
+}
@@ -0,0 +1,256 @@
+package com.genielog.auditor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the defects of two audits stored by {@link DefectWriter}, reporting the new, fixed and unchanged defects.
+ * <br>
+ * The defects are matched by their fingerprint (see {@link ADefect#fingerprint()}), so the comparison is linear in the
+ * number of defects. When the previous defects don't fit in a share of the heap, both files are first split by a hash
+ * of the fingerprints into partitions in a temporary directory, and the partitions are compared one after the other:
+ * only one partition of the previous defects is kept in memory at a time, as JSON text parsed again when visited.
+ */
+public class DefectDiff {
+
+	protected static Logger logger = LogManager.getLogger(DefectDiff.class);
+
+	// Share of the maximum heap for the previous defects kept in memory at once.
+	private static final int HEAP_SHARE = 4;
+
+	// Ratio of the memory of the previous defects kept as text, with their fingerprint and map entry, to their JSON size.
+	private static final int INFLATION = 3;
+
+	// Compression ratio assumed for estimating the size of gzip-compressed defects.
+	private static final int GZIP_RATIO = 8;
+
+	// Maximum number of partitions written at once, the defects being partitioned in several passes beyond.
+	private static final int MAX_OPEN_PARTITIONS = 64;
+
+	/** Receives the result of the comparison of the defects. */
+	public interface DiffVisitor {
+
+		/** A defect of the current audit, not found in the previous one. */
+		void onNew(JsonNode current);
+
+		/** A defect of the previous audit, not found in the current one. */
+		void onFixed(JsonNode previous);
+
+		/** A defect found in both audits. */
+		default void onUnchanged(JsonNode previous, JsonNode current) {
+		}
+	}
+
+	private final File _previous;
+	private final File _current;
+	private int _nbPartitions = 0;
+	private File _tempDir = null;
+
+	private long _nbNew = 0L;
+	private long _nbFixed = 0L;
+	private long _nbUnchanged = 0L;
+
+	public DefectDiff(File previous, File current) {
+		if ((previous == null) || (current == null)) {
+			throw new IllegalArgumentException("Undefined defect files to compare.");
+		}
+		_previous = previous;
+		_current = current;
+	}
+
+	/** Set the number of partitions of the defects, or 0 to deduce it from the size of the previous defects. */
+	public DefectDiff setNbPartitions(int nbPartitions) {
+		if (nbPartitions < 0) {
+			throw new IllegalArgumentException("Number of partitions can't be negative : " + nbPartitions);
+		}
+		_nbPartitions = nbPartitions;
+		return this;
+	}
+
+	/** Set the directory of the temporary partitions, the default temporary directory with null. */
+	public DefectDiff setTempDir(File tempDir) {
+		_tempDir = tempDir;
+		return this;
+	}
+
+	public long getNbNew() {
+		return _nbNew;
+	}
+
+	public long getNbFixed() {
+		return _nbFixed;
+	}
+
+	public long getNbUnchanged() {
+		return _nbUnchanged;
+	}
+
+	/** Returns the fingerprint of a defect read back from a file, computed for files written without it. */
+	public static String fingerprint(JsonNode defect) {
+		JsonNode result = defect.get("fingerprint");
+		if (result != null) {
+			return result.asText();
+		}
+		return ADefect.fingerprint(text(defect, "checker_name"), text(defect, "subject"), text(defect, "signature"));
+	}
+
+	private static String text(JsonNode defect, String field) {
+		JsonNode result = defect.get(field);
+		return (result == null) ? null : result.asText();
+	}
+
+	// ******************************************************************************************************************
+	// Comparison
+	// ******************************************************************************************************************
+
+	/** Compare the defects of the two files, passing each of them to the visitor. */
+	public DefectDiff run(DiffVisitor visitor) throws IOException {
+
+		_nbNew = 0L;
+		_nbFixed = 0L;
+		_nbUnchanged = 0L;
+
+		int nbPartitions = (_nbPartitions > 0) ? _nbPartitions : estimateNbPartitions();
+		if (nbPartitions == 1) {
+			compare(_previous, _current, visitor);
+		} else {
+			Path dir = (_tempDir == null) ? Files.createTempDirectory("defect-diff")
+					: Files.createTempDirectory(_tempDir.toPath(), "defect-diff");
+			try {
+				List<File> previous = partition(_previous, dir, "previous", nbPartitions);
+				List<File> current = partition(_current, dir, "current", nbPartitions);
+				for (int i = 0; i < nbPartitions; i++) {
+					compare(previous.get(i), current.get(i), visitor);
+				}
+			} finally {
+				try (Stream<Path> files = Files.walk(dir)) {
+					files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+				}
+			}
+		}
+
+		logger.debug("Diff of {} and {} : {} new, {} fixed, {} unchanged defects in {} partitions", _previous.getName(),
+				_current.getName(), _nbNew, _nbFixed, _nbUnchanged, nbPartitions);
+		return this;
+	}
+
+	/** Returns the number of partitions keeping the previous defects of a partition within a share of the heap. */
+	private int estimateNbPartitions() {
+		long size = _previous.length() * (DefectWriter.isGzip(_previous) ? GZIP_RATIO : 1) * INFLATION;
+		long budget = Long.max(1L, Runtime.getRuntime().maxMemory() / HEAP_SHARE);
+		return (int) Long.min(1024, 1 + size / budget);
+	}
+
+	/**
+	 * Split the defects of a file by the hash of their fingerprint. At most MAX_OPEN_PARTITIONS partitions are written
+	 * at once, reading the file again for each range of partitions.
+	 */
+	private List<File> partition(File file, Path dir, String prefix, int nbPartitions) throws IOException {
+		List<File> result = new ArrayList<>(nbPartitions);
+		for (int i = 0; i < nbPartitions; i++) {
+			result.add(dir.resolve(prefix + "-" + i + ".json").toFile());
+		}
+		for (int first = 0; first < nbPartitions; first += MAX_OPEN_PARTITIONS) {
+			partition(file, result.subList(first, Integer.min(nbPartitions, first + MAX_OPEN_PARTITIONS)), first,
+					nbPartitions);
+		}
+		return result;
+	}
+
+	/** Write the defects of a file belonging to the range of partitions starting at the given one. */
+	private void partition(File file, List<File> partitions, int first, int nbPartitions) throws IOException {
+		ObjectMapper mapper = AConfig.getObjectMapper();
+		List<BufferedWriter> writers = new ArrayList<>(partitions.size());
+		try (Stream<JsonNode> defects = DefectReader.read(file)) {
+			for (File partition : partitions) {
+				writers.add(Files.newBufferedWriter(partition.toPath(), StandardCharsets.UTF_8));
+			}
+			defects.forEach(defect -> {
+				int index = Math.floorMod(fingerprint(defect).hashCode(), nbPartitions) - first;
+				if ((index >= 0) && (index < writers.size())) {
+					try {
+						BufferedWriter writer = writers.get(index);
+						writer.write(mapper.writeValueAsString(defect));
+						writer.newLine();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (BufferedWriter writer : writers) {
+				writer.close();
+			}
+		}
+	}
+
+	private static JsonNode parse(ObjectMapper mapper, String defect) {
+		try {
+			return mapper.readTree(defect);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Compare the defects of two files, keeping the previous ones in memory as JSON text, which is several times smaller
+	 * than their tree.
+	 */
+	private void compare(File previous, File current, DiffVisitor visitor) throws IOException {
+
+		ObjectMapper mapper = AConfig.getObjectMapper();
+		Map<String, Deque<String>> remaining = new HashMap<>();
+		try (Stream<JsonNode> defects = DefectReader.read(previous)) {
+			defects.forEach(defect -> remaining.computeIfAbsent(fingerprint(defect), key -> new ArrayDeque<>(1))
+					.add(defect.toString()));
+		}
+
+		try (Stream<JsonNode> defects = DefectReader.read(current)) {
+			defects.forEach(defect -> {
+				String fingerprint = fingerprint(defect);
+				Deque<String> matches = remaining.get(fingerprint);
+				if (matches == null) {
+					_nbNew++;
+					visitor.onNew(defect);
+				} else {
+					String match = matches.poll();
+					if (matches.isEmpty()) {
+						remaining.remove(fingerprint);
+					}
+					_nbUnchanged++;
+					visitor.onUnchanged(parse(mapper, match), defect);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		for (Deque<String> matches : remaining.values()) {
+			for (String defect : matches) {
+				_nbFixed++;
+				visitor.onFixed(mapper.readTree(defect));
+			}
+		}
+	}
+}
@@ -0,0 +1,306 @@
+package com.genielog.auditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * An in-memory index of defects, deduplicated on their checker name, subject key and signature. <br>
+ * Checker names, subject keys and signatures are interned once and identified by integers, so each distinct defect
+ * only costs a long in an open-addressing hash set, and the counts per checker, per subject and per signature are
+ * maintained in arrays while indexing. Adding a defect and all the count queries are O(1). <br>
+ * The index is a consumer of defects, so it can be used as the sink of an audit, and it can be fed with the defects
+ * previously written by a {@link DefectWriter}.
+ */
+@SuppressWarnings("rawtypes")
+public class DefectIndex implements Consumer<ADefect> {
+
+	// Number of bits of each id in the key of a defect: checker, signature and subject.
+	private static final int CHECKER_BITS = 12;
+	private static final int SIGNATURE_BITS = 20;
+	private static final int SUBJECT_BITS = 64 - CHECKER_BITS - SIGNATURE_BITS;
+
+	/** Interned strings, identified by their index of insertion, with the number of defects of each. */
+	private static class Dictionary {
+
+		private final String _what;
+		private final int _maxSize;
+		private final Map<String, Integer> _ids = new HashMap<>();
+		private final List<String> _values = new ArrayList<>();
+		private int[] _counts = new int[64];
+
+		Dictionary(String what, int bits) {
+			_what = what;
+			_maxSize = (int) Long.min(Integer.MAX_VALUE, 1L << bits);
+		}
+
+		int intern(String value) {
+			Integer result = _ids.get(value);
+			if (result == null) {
+				if (_values.size() >= _maxSize) {
+					throw new IllegalStateException("Too many distinct " + _what + " in the defect index : " + _maxSize);
+				}
+				result = _values.size();
+				_ids.put(value, result);
+				_values.add(value);
+			}
+			return result;
+		}
+
+		int id(String value) {
+			Integer result = _ids.get(value);
+			return (result == null) ? -1 : result;
+		}
+
+		void count(int id) {
+			if (id >= _counts.length) {
+				_counts = Arrays.copyOf(_counts, Integer.max(id + 1, 2 * _counts.length));
+			}
+			_counts[id]++;
+		}
+
+		int count(String value) {
+			int id = id(value);
+			return (id < 0) ? 0 : _counts[id];
+		}
+
+		String value(int id) {
+			return _values.get(id);
+		}
+
+		Map<String, Integer> counts() {
+			Map<String, Integer> result = new LinkedHashMap<>();
+			for (int id = 0; id < _values.size(); id++) {
+				result.put(_values.get(id), _counts[id]);
+			}
+			return result;
+		}
+	}
+
+	/** A set of longs with open addressing and linear probing, without boxing. */
+	private static class LongHashSet {
+
+		private static final long EMPTY = Long.MIN_VALUE;
+
+		private long[] _keys = newTable(1 << 10);
+		private int _size = 0;
+		private boolean _hasEmpty = false;
+
+		private static long[] newTable(int capacity) {
+			long[] result = new long[capacity];
+			Arrays.fill(result, EMPTY);
+			return result;
+		}
+
+		private static int slot(long key, int mask) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+
+		boolean add(long key) {
+			if (key == EMPTY) {
+				boolean result = !_hasEmpty;
+				_hasEmpty = true;
+				_size += result ? 1 : 0;
+				return result;
+			}
+			if (2 * (_size + 1) > _keys.length) {
+				rehash(2 * _keys.length);
+			}
+			int mask = _keys.length - 1;
+			int i = slot(key, mask);
+			while (_keys[i] != EMPTY) {
+				if (_keys[i] == key) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			_keys[i] = key;
+			_size++;
+			return true;
+		}
+
+		boolean contains(long key) {
+			if (key == EMPTY) {
+				return _hasEmpty;
+			}
+			int mask = _keys.length - 1;
+			int i = slot(key, mask);
+			while (_keys[i] != EMPTY) {
+				if (_keys[i] == key) {
+					return true;
+				}
+				i = (i + 1) & mask;
+			}
+			return false;
+		}
+
+		private void rehash(int capacity) {
+			long[] old = _keys;
+			_keys = newTable(capacity);
+			int mask = capacity - 1;
+			for (long key : old) {
+				if (key != EMPTY) {
+					int i = slot(key, mask);
+					while (_keys[i] != EMPTY) {
+						i = (i + 1) & mask;
+					}
+					_keys[i] = key;
+				}
+			}
+		}
+
+		void forEach(LongConsumer action) {
+			if (_hasEmpty) {
+				action.accept(EMPTY);
+			}
+			for (long key : _keys) {
+				if (key != EMPTY) {
+					action.accept(key);
+				}
+			}
+		}
+
+		int size() {
+			return _size;
+		}
+	}
+
+	private final Dictionary _checkers = new Dictionary("checkers", CHECKER_BITS);
+	private final Dictionary _signatures = new Dictionary("signatures", SIGNATURE_BITS);
+	private final Dictionary _subjects = new Dictionary("subjects", SUBJECT_BITS);
+	private final LongHashSet _defects = new LongHashSet();
+	private long _nbDuplicates = 0L;
+
+	private static long key(int checker, int signature, int subject) {
+		return ((long) checker << (SIGNATURE_BITS + SUBJECT_BITS)) | ((long) signature << SUBJECT_BITS) | subject;
+	}
+
+	// ******************************************************************************************************************
+	// Indexing
+	// ******************************************************************************************************************
+
+	@Override
+	public void accept(ADefect defect) {
+		add(defect);
+	}
+
+	/** Index a defect, returns false if the same defect was already indexed. */
+	public boolean add(ADefect defect) {
+		if (defect == null) {
+			throw new IllegalArgumentException("Undefined defect to index.");
+		}
+		AChecker checker = defect.checker();
+		return add((checker == null) ? "" : checker.getName(), defect.subjectKey(), defect.signature());
+	}
+
+	/** Index a defect from its checker name, subject key and signature, returns false if it was already indexed. */
+	public synchronized boolean add(String checkerName, String subjectKey, String signature) {
+		int checker = _checkers.intern(String.valueOf(checkerName));
+		int sig = _signatures.intern(String.valueOf(signature));
+		int subject = _subjects.intern(String.valueOf(subjectKey));
+
+		boolean result = _defects.add(key(checker, sig, subject));
+		if (result) {
+			_checkers.count(checker);
+			_signatures.count(sig);
+			_subjects.count(subject);
+		} else {
+			_nbDuplicates++;
+		}
+		return result;
+	}
+
+	/** Index the defects of a JSON Lines file written by a DefectWriter, returns the number of new defects. */
+	public long addAll(File file) throws IOException {
+		long result = 0L;
+		try (Stream<JsonNode> defects = DefectReader.read(file)) {
+			for (JsonNode defect : (Iterable<JsonNode>) defects::iterator) {
+				if (add(defect.path("checker_name").asText(""), defect.path("subject").asText(),
+						defect.path("signature").asText(""))) {
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	// ******************************************************************************************************************
+	// Queries
+	// ******************************************************************************************************************
+
+	/** Number of distinct defects. */
+	public synchronized int size() {
+		return _defects.size();
+	}
+
+	/** Number of defects ignored because already indexed. */
+	public synchronized long getNbDuplicates() {
+		return _nbDuplicates;
+	}
+
+	public synchronized boolean contains(String checkerName, String subjectKey, String signature) {
+		int checker = _checkers.id(checkerName);
+		int sig = _signatures.id(signature);
+		int subject = _subjects.id(subjectKey);
+		return (checker >= 0) && (sig >= 0) && (subject >= 0) && _defects.contains(key(checker, sig, subject));
+	}
+
+	public synchronized int countByChecker(String checkerName) {
+		return _checkers.count(checkerName);
+	}
+
+	public synchronized int countBySubject(String subjectKey) {
+		return _subjects.count(subjectKey);
+	}
+
+	public synchronized int countBySignature(String signature) {
+		return _signatures.count(signature);
+	}
+
+	/** Returns the number of defects of each checker, in their order of appearance. */
+	public synchronized Map<String, Integer> getCheckerCounts() {
+		return _checkers.counts();
+	}
+
+	/** Returns the number of defects of each signature, in their order of appearance. */
+	public synchronized Map<String, Integer> getSignatureCounts() {
+		return _signatures.counts();
+	}
+
+	/** Returns the number of distinct subjects with at least one defect. */
+	public synchronized int getNbSubjects() {
+		return _subjects._values.size();
+	}
+
+	/** Calls the action with the checker name, subject key and signature of each distinct defect. */
+	public synchronized void forEach(DefectVisitor action) {
+		long subjectMask = (1L << SUBJECT_BITS) - 1;
+		long signatureMask = (1L << SIGNATURE_BITS) - 1;
+		_defects.forEach(key -> action.visit(
+				_checkers.value((int) (key >>> (SIGNATURE_BITS + SUBJECT_BITS))),
+				_subjects.value((int) (key & subjectMask)),
+				_signatures.value((int) ((key >>> SUBJECT_BITS) & signatureMask))));
+	}
+
+	/** The action called for each distinct defect of the index. */
+	@FunctionalInterface
+	public interface DefectVisitor {
+		void visit(String checkerName, String subjectKey, String signature);
+	}
+
+	public synchronized String toString() {
+		return String.format("%d defects (%d duplicates) from %d checkers on %d subjects with %d signatures", size(),
+				getNbDuplicates(), _checkers._values.size(), getNbSubjects(), _signatures._values.size());
+	}
+}
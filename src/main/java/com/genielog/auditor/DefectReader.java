@@ -0,0 +1,65 @@
+package com.genielog.auditor;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+
+/**
+ * Reads back, one at a time, the defects written by a {@link DefectWriter} as JSON nodes, so files with millions of
+ * defects can be analyzed without loading them in memory. Gzip-compressed files are detected by their ".gz" extension.
+ */
+public class DefectReader implements Iterator<JsonNode>, AutoCloseable {
+
+	private final MappingIterator<JsonNode> _iterator;
+
+	public DefectReader(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("Undefined file for reading defects.");
+		}
+		InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		if (DefectWriter.isGzip(file)) {
+			is = new GZIPInputStream(is, 1 << 16);
+		}
+		_iterator = AConfig.getObjectMapper().readerFor(JsonNode.class).readValues(is);
+	}
+
+	/** Returns a lazy stream of the defects of a file, which must be closed to release the file. */
+	public static Stream<JsonNode> read(File file) throws IOException {
+		DefectReader reader = new DefectReader(file);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL),
+				false).onClose(() -> {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	@Override
+	public boolean hasNext() {
+		return _iterator.hasNext();
+	}
+
+	@Override
+	public JsonNode next() {
+		return _iterator.next();
+	}
+
+	@Override
+	public void close() throws IOException {
+		_iterator.close();
+	}
+}
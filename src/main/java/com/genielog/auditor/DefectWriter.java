@@ -0,0 +1,178 @@
+package com.genielog.auditor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.genielog.tools.Tools;
+
+/**
+ * Writes defects to a file in the JSON Lines format, one JSON object per line as produced by ADefect.toJson(). <br>
+ * The defects are written by a background thread, in batches, through a bounded queue: producers block when the
+ * writer falls behind, so the memory used doesn't depend on the number of defects. The file is gzip-compressed when
+ * its name ends with ".gz". <br>
+ * The writer is a thread-safe consumer of defects, so it can be used as the sink of an audit, and must be closed to
+ * flush the last defects.
+ */
+@SuppressWarnings("rawtypes")
+public class DefectWriter implements Consumer<ADefect>, AutoCloseable {
+
+	protected static Logger logger = LogManager.getLogger(DefectWriter.class);
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final File _file;
+	private final int _batchSize;
+	private final BlockingQueue<ADefect> _queue;
+	private final JsonGenerator _generator;
+	private final Thread _thread;
+
+	private volatile boolean _closed = false;
+	private volatile Throwable _error = null;
+	private long _nbWritten = 0L;
+
+	public DefectWriter(File file) throws IOException {
+		this(file, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	public DefectWriter(File file, int queueCapacity, int batchSize) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("Undefined file for writing defects.");
+		}
+		if ((queueCapacity <= 0) || (batchSize <= 0)) {
+			throw new IllegalArgumentException("Queue capacity and batch size must be strictly positive.");
+		}
+		_file = file;
+		_batchSize = batchSize;
+		_queue = new ArrayBlockingQueue<>(queueCapacity);
+
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		if (isGzip(file)) {
+			os = new GZIPOutputStream(os, 1 << 16);
+		}
+		_generator = AConfig.getObjectMapper().getFactory().createGenerator(os, JsonEncoding.UTF8);
+		_generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+
+		_thread = new Thread(this::writeLoop, "DefectWriter-" + file.getName());
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	static boolean isGzip(File file) {
+		return file.getName().endsWith(".gz");
+	}
+
+	public File getFile() {
+		return _file;
+	}
+
+	/** Returns the number of defects written so far. */
+	public synchronized long getNbWritten() {
+		return _nbWritten;
+	}
+
+	/**
+	 * Queue a defect for writing, blocking while the queue is full. Throws the error of the writer thread, if it failed
+	 * meanwhile.
+	 */
+	@Override
+	public void accept(ADefect defect) {
+		if (_closed) {
+			throw new IllegalStateException("Defect writer closed : " + _file.getAbsolutePath());
+		}
+		checkError();
+		if (defect != null) {
+			try {
+				// Nothing drains the queue anymore once the writer thread failed.
+				while (!_queue.offer(defect, 50, TimeUnit.MILLISECONDS)) {
+					checkError();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while writing defects.", e);
+			}
+		}
+	}
+
+	private void checkError() {
+		Throwable error = _error;
+		if ((error == null) && !_thread.isAlive() && !_closed) {
+			error = new IllegalStateException("Writer thread terminated");
+		}
+		if (error != null) {
+			throw new IllegalStateException("Defect writer failed : " + Tools.getExceptionMessages(error), error);
+		}
+	}
+
+	private void writeLoop() {
+		List<ADefect> batch = new ArrayList<>(_batchSize);
+		try {
+			while (!_closed || !_queue.isEmpty()) {
+				ADefect first = _queue.poll(50, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					_queue.drainTo(batch, _batchSize - 1);
+					write(batch);
+					batch.clear();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			_error = e;
+		} catch (IOException | RuntimeException | Error e) {
+			logger.error("Unable to write defects in {} : {}", _file.getAbsolutePath(), Tools.getExceptionMessages(e));
+			_error = e;
+			_queue.clear();
+		}
+	}
+
+	private synchronized void write(List<ADefect> batch) throws IOException {
+		for (ADefect defect : batch) {
+			defect.toJson(_generator);
+			_nbWritten++;
+		}
+		_generator.flush();
+	}
+
+	/** Waits for all the queued defects to be written and closes the file. */
+	@Override
+	public void close() throws IOException {
+		if (_closed) {
+			return;
+		}
+		_closed = true;
+		try {
+			_thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (_error != null) {
+			try {
+				_generator.close();
+			} catch (IOException e) {
+				logger.debug("Unable to close {} after failure : {}", _file.getName(), Tools.getExceptionMessages(e));
+			}
+			throw new IOException("Defect writer failed : " + Tools.getExceptionMessages(_error), _error);
+		}
+		// Ends the last line, so the file can be appended to.
+		_generator.writeRaw('\n');
+		_generator.close();
+		logger.debug("{} defects written in {}", _nbWritten, _file.getName());
+	}
+}
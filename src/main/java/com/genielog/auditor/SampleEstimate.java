@@ -0,0 +1,100 @@
+package com.genielog.auditor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.genielog.tools.Tools;
+
+/**
+ * The number of defects of a checker on all its subjects, extrapolated from the defects found on a sample of them. <br>
+ * A checker produces at most one defect per subject, so in each stratum the estimate is the proportion of sampled
+ * subjects with a defect times the number of subjects, and the strata estimates are summed. The confidence interval is
+ * the normal approximation of the stratified estimator, with the finite population correction, bounded by the defects
+ * actually found and the number of subjects.
+ */
+public class SampleEstimate {
+
+	private final SamplingPlan.Sampler _sampler;
+	private final Map<Object, LongAdder> _defects = new ConcurrentHashMap<>();
+
+	public SampleEstimate(SamplingPlan.Sampler sampler) {
+		if (sampler == null) {
+			throw new IllegalArgumentException("Undefined sampler for the estimate.");
+		}
+		_sampler = sampler;
+	}
+
+	/** Record a defect found on a sampled subject. */
+	public void recordDefect(Object subject) {
+		_defects.computeIfAbsent(_sampler.stratum(subject), key -> new LongAdder()).increment();
+	}
+
+	private long getDefects(Object stratum) {
+		LongAdder result = _defects.get(stratum);
+		return (result == null) ? 0L : result.sum();
+	}
+
+	public SamplingPlan getPlan() {
+		return _sampler.getPlan();
+	}
+
+	/** Number of subjects enumerated. */
+	public long getPopulation() {
+		return _sampler.getStrata().stream().mapToLong(_sampler::getPopulation).sum();
+	}
+
+	/** Number of subjects sampled. */
+	public long getSampleSize() {
+		return _sampler.getStrata().stream().mapToLong(_sampler::getSampled).sum();
+	}
+
+	/** Number of defects found on the sampled subjects. */
+	public long getNbDefects() {
+		return _defects.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	/** Estimated number of defects on all the subjects. */
+	public double getEstimatedDefects() {
+		double result = 0.0;
+		for (Object stratum : _sampler.getStrata()) {
+			long sampled = _sampler.getSampled(stratum);
+			if (sampled > 0) {
+				result += (double) _sampler.getPopulation(stratum) * getDefects(stratum) / sampled;
+			}
+		}
+		return result;
+	}
+
+	/** Variance of the estimated number of defects. */
+	private double getVariance() {
+		double result = 0.0;
+		for (Object stratum : _sampler.getStrata()) {
+			double population = _sampler.getPopulation(stratum);
+			long sampled = _sampler.getSampled(stratum);
+			if ((sampled > 1) && (sampled < population)) {
+				double p = (double) getDefects(stratum) / sampled;
+				result += population * population * (1.0 - sampled / population) * p * (1.0 - p) / (sampled - 1);
+			}
+		}
+		return result;
+	}
+
+	/** Lower bound of the confidence interval of the estimated number of defects. */
+	public double getLowerBound() {
+		double result = getEstimatedDefects() - getPlan().getZ() * Math.sqrt(getVariance());
+		return Double.max(result, getNbDefects());
+	}
+
+	/** Upper bound of the confidence interval of the estimated number of defects. */
+	public double getUpperBound() {
+		double result = getEstimatedDefects() + getPlan().getZ() * Math.sqrt(getVariance());
+		return Double.min(result, getPopulation());
+	}
+
+	public String toString() {
+		return String.format("~%s defects [%s - %s] at %s%% from %d/%d subjects",
+				Tools.fmt(getEstimatedDefects(), 1), Tools.fmt(getLowerBound(), 1), Tools.fmt(getUpperBound(), 1),
+				Tools.fmt(100 * getPlan().getConfidence(), 0), getSampleSize(), getPopulation());
+	}
+}
@@ -0,0 +1,215 @@
+package com.genielog.auditor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * How to check only a random sample of the subjects of the checkers, for an approximate audit. <br>
+ * A subject is selected from a pseudo-random score hashed from its string value and a seed, so a sample doesn't depend
+ * on the order nor on the parallelism of the subjects, and the same seed selects the same subjects again:
+ * <ul>
+ * <li>With a rate, each subject is selected independently with this probability (Bernoulli sampling), without
+ * buffering the subjects.
+ * <li>With a size, the subjects with the lowest scores are selected (bottom-k reservoir), which buffers the sample
+ * until all the subjects are enumerated.
+ * </ul>
+ * Stratified, the rate or the size applies to each stratum of the subjects, so small strata are sampled as well. The
+ * number of defects of all the subjects is then extrapolated from the sample, see {@link SampleEstimate}.
+ */
+public class SamplingPlan {
+
+	private final double _rate;
+	private final int _size;
+	private Function<Object, ?> _stratum = null;
+	private long _seed = System.nanoTime();
+	private double _confidence = 0.95;
+
+	private SamplingPlan(double rate, int size) {
+		_rate = rate;
+		_size = size;
+	}
+
+	/** Select each subject with the given probability. */
+	public static SamplingPlan ofRate(double rate) {
+		if ((rate <= 0.0) || (rate > 1.0)) {
+			throw new IllegalArgumentException("Sampling rate must be in ]0,1] : " + rate);
+		}
+		return new SamplingPlan(rate, 0);
+	}
+
+	/** Select at most the given number of subjects. */
+	public static SamplingPlan ofSize(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Sample size must be strictly positive : " + size);
+		}
+		return new SamplingPlan(0.0, size);
+	}
+
+	/** Sample separately each stratum of subjects, given by a function of the subject. */
+	public SamplingPlan stratifiedBy(Function<Object, ?> stratum) {
+		_stratum = stratum;
+		return this;
+	}
+
+	/** Set the seed of the scores of the subjects, for selecting the same sample again. */
+	public SamplingPlan withSeed(long seed) {
+		_seed = seed;
+		return this;
+	}
+
+	/** Set the confidence level of the intervals of the estimates, 0.95 by default. */
+	public SamplingPlan withConfidence(double confidence) {
+		if ((confidence <= 0.0) || (confidence >= 1.0)) {
+			throw new IllegalArgumentException("Confidence level must be in ]0,1[ : " + confidence);
+		}
+		_confidence = confidence;
+		return this;
+	}
+
+	/** Returns the probability of selecting a subject, or 0 for a sample of a given size. */
+	public double getRate() {
+		return _rate;
+	}
+
+	/** Returns the maximum number of subjects selected, in each stratum, or 0 for a sample at a given rate. */
+	public int getSize() {
+		return _size;
+	}
+
+	public double getConfidence() {
+		return _confidence;
+	}
+
+	/**
+	 * Returns the quantile of the standard normal distribution for the confidence level, with the approximation 26.2.23
+	 * of Abramowitz and Stegun.
+	 */
+	double getZ() {
+		double p = (1.0 - _confidence) / 2;
+		double t = Math.sqrt(-2.0 * Math.log(p));
+		return t - (2.515517 + 0.802853 * t + 0.010328 * t * t) / (1.0 + 1.432788 * t + 0.189269 * t * t
+				+ 0.001308 * t * t * t);
+	}
+
+	/** Returns a new sampler, for sampling the subjects of a single check. */
+	public Sampler newSampler() {
+		return new Sampler();
+	}
+
+	public String toString() {
+		return ((_rate > 0) ? "rate " + _rate : "size " + _size) + ((_stratum != null) ? " by stratum" : "");
+	}
+
+	// ******************************************************************************************************************
+	// Sampler
+	// ******************************************************************************************************************
+
+	/** Selects the subjects of a check, counting them by stratum. */
+	public class Sampler {
+
+		private final Map<Object, LongAdder> _population = new ConcurrentHashMap<>();
+		private final Map<Object, LongAdder> _sampled = new ConcurrentHashMap<>();
+
+		public SamplingPlan getPlan() {
+			return SamplingPlan.this;
+		}
+
+		/** Returns the stratum of a subject. */
+		Object stratum(Object subject) {
+			Object result = (_stratum == null) ? null : _stratum.apply(subject);
+			return (result == null) ? "" : result;
+		}
+
+		/** Returns the score of a subject, uniformly distributed in [0,1[. */
+		double score(Object subject) {
+			long hash = Hashing.murmur3_128().newHasher()
+					.putLong(_seed)
+					.putString(String.valueOf(subject), StandardCharsets.UTF_8)
+					.hash().asLong();
+			return (hash >>> 11) * 0x1.0p-53;
+		}
+
+		/** Returns the subjects selected among the given ones. */
+		public <S> Stream<S> sample(Stream<S> subjects) {
+			if (_rate > 0) {
+				return subjects.filter(subject -> {
+					Object stratum = stratum(subject);
+					_population.computeIfAbsent(stratum, key -> new LongAdder()).increment();
+					boolean result = score(subject) < _rate;
+					if (result) {
+						_sampled.computeIfAbsent(stratum, key -> new LongAdder()).increment();
+					}
+					return result;
+				});
+			}
+			return StreamSupport.stream(() -> reservoir(subjects).spliterator(), Spliterator.ORDERED | Spliterator.NONNULL,
+					subjects.isParallel()).onClose(subjects::close);
+		}
+
+		/** Enumerate all the subjects, keeping the ones with the lowest scores in each stratum. */
+		private <S> List<S> reservoir(Stream<S> subjects) {
+			Map<Object, PriorityQueue<Scored<S>>> reservoirs = new HashMap<>();
+			subjects.sequential().forEach(subject -> {
+				Object stratum = stratum(subject);
+				_population.computeIfAbsent(stratum, key -> new LongAdder()).increment();
+				PriorityQueue<Scored<S>> reservoir = reservoirs.computeIfAbsent(stratum,
+						key -> new PriorityQueue<>(Comparator.comparingDouble((Scored<S> scored) -> scored.score).reversed()));
+				double score = score(subject);
+				if (reservoir.size() < _size) {
+					reservoir.add(new Scored<>(subject, score));
+				} else if (score < reservoir.peek().score) {
+					reservoir.poll();
+					reservoir.add(new Scored<>(subject, score));
+				}
+			});
+			List<S> result = new ArrayList<>();
+			for (Map.Entry<Object, PriorityQueue<Scored<S>>> entry : reservoirs.entrySet()) {
+				_sampled.computeIfAbsent(entry.getKey(), key -> new LongAdder()).add(entry.getValue().size());
+				entry.getValue().forEach(scored -> result.add(scored.subject));
+			}
+			return result;
+		}
+
+		/** Returns the strata of the subjects enumerated so far. */
+		public Set<Object> getStrata() {
+			return _population.keySet();
+		}
+
+		/** Returns the number of subjects enumerated in a stratum. */
+		public long getPopulation(Object stratum) {
+			LongAdder result = _population.get(stratum);
+			return (result == null) ? 0L : result.sum();
+		}
+
+		/** Returns the number of subjects selected in a stratum. */
+		public long getSampled(Object stratum) {
+			LongAdder result = _sampled.get(stratum);
+			return (result == null) ? 0L : result.sum();
+		}
+	}
+
+	private static class Scored<S> {
+
+		final S subject;
+		final double score;
+
+		Scored(S subject, double score) {
+			this.subject = subject;
+			this.score = score;
+		}
+	}
+}
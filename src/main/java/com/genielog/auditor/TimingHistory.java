@@ -0,0 +1,157 @@
+package com.genielog.auditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.genielog.tools.JsonUtils;
+import com.genielog.tools.Tools;
+
+/**
+ * The durations of the checkers measured during the previous audits, persisted in a JSON file. <br>
+ * The expected duration of a checker is a moving average of its last durations, used by the {@link AuditEngine} to
+ * start the longest checkers first and to estimate the duration of an audit before running it.
+ */
+public class TimingHistory {
+
+	protected static Logger logger = LogManager.getLogger(TimingHistory.class);
+
+	// Weight of the last duration in the moving average.
+	private static final double SMOOTHING = 0.5;
+
+	/** The timings recorded for a checker. */
+	public static class Timing {
+
+		private long _nbRuns;
+		private double _avgDuration;
+		private long _lastDuration;
+		private long _lastNbSubjects;
+
+		/** Number of audits the checker was timed in. */
+		public long getNbRuns() {
+			return _nbRuns;
+		}
+
+		/** Moving average of the durations in milliseconds. */
+		public long getExpectedDuration() {
+			return Math.round(_avgDuration);
+		}
+
+		public long getLastDuration() {
+			return _lastDuration;
+		}
+
+		public long getLastNbSubjects() {
+			return _lastNbSubjects;
+		}
+	}
+
+	private final File _file;
+	private final Map<String, Timing> _timings = new TreeMap<>();
+
+	/** Loads the history from a file, which is created on the first save if it doesn't exist. */
+	public TimingHistory(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException("Undefined file for the timing history.");
+		}
+		_file = file;
+		if (file.isFile()) {
+			load();
+		}
+	}
+
+	public File getFile() {
+		return _file;
+	}
+
+	/** Records the duration of a checker in milliseconds, and the number of subjects it checked. */
+	public synchronized void record(String checkerName, long duration, long nbSubjects) {
+		Timing timing = _timings.computeIfAbsent(checkerName, k -> new Timing());
+		timing._avgDuration = (timing._nbRuns == 0) ? duration
+				: SMOOTHING * duration + (1 - SMOOTHING) * timing._avgDuration;
+		timing._lastDuration = duration;
+		timing._lastNbSubjects = nbSubjects;
+		timing._nbRuns++;
+	}
+
+	/** Returns the timings of a checker, or null if it was never timed. */
+	public synchronized Timing get(String checkerName) {
+		return _timings.get(checkerName);
+	}
+
+	/** Returns the expected duration of a checker in milliseconds, or -1 if it was never timed. */
+	public synchronized long getExpectedDuration(String checkerName) {
+		Timing timing = _timings.get(checkerName);
+		return (timing == null) ? -1L : timing.getExpectedDuration();
+	}
+
+	/**
+	 * Returns the total duration of jobs executed by a number of workers, each job being started by the first available
+	 * worker in the given order.
+	 */
+	public static long makespan(Collection<Long> durations, int nbWorkers) {
+		if (nbWorkers <= 0) {
+			throw new IllegalArgumentException("Number of workers must be strictly positive : " + nbWorkers);
+		}
+		PriorityQueue<Long> workers = new PriorityQueue<>();
+		for (int i = 0; i < nbWorkers; i++) {
+			workers.add(0L);
+		}
+		for (long duration : durations) {
+			workers.add(workers.poll() + duration);
+		}
+		return workers.stream().mapToLong(Long::longValue).max().orElse(0L);
+	}
+
+	// ******************************************************************************************************************
+	// Persistence
+	// ******************************************************************************************************************
+
+	private void load() {
+		JsonNode root = JsonUtils.getJsonNodeFromFile(_file.getAbsolutePath());
+		if (root == null) {
+			logger.error("Unable to load timing history from {}", _file.getAbsolutePath());
+			return;
+		}
+		Iterator<Map.Entry<String, JsonNode>> checkers = root.path("checkers").fields();
+		while (checkers.hasNext()) {
+			Map.Entry<String, JsonNode> entry = checkers.next();
+			Timing timing = new Timing();
+			timing._nbRuns = entry.getValue().path("runs").asLong();
+			timing._avgDuration = entry.getValue().path("avg-duration-ms").asDouble();
+			timing._lastDuration = entry.getValue().path("last-duration-ms").asLong();
+			timing._lastNbSubjects = entry.getValue().path("last-subjects").asLong();
+			_timings.put(entry.getKey(), timing);
+		}
+	}
+
+	/** Saves the history in its file, returns false on failure. */
+	public synchronized boolean save() {
+		boolean result = true;
+		ObjectNode root = JsonUtils.getObjectMapper().createObjectNode();
+		ObjectNode checkers = root.putObject("checkers");
+		_timings.forEach((name, timing) -> {
+			ObjectNode node = checkers.putObject(name);
+			node.put("runs", timing._nbRuns);
+			node.put("avg-duration-ms", timing._avgDuration);
+			node.put("last-duration-ms", timing._lastDuration);
+			node.put("last-subjects", timing._lastNbSubjects);
+		});
+		try {
+			JsonUtils.getObjectMapper().writeValue(_file, root);
+		} catch (IOException e) {
+			logger.error("Unable to save timing history in {} : {}", _file.getAbsolutePath(), Tools.getExceptionMessages(e));
+			result = false;
+		}
+		return result;
+	}
+}
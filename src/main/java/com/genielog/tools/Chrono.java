@@ -37,6 +37,13 @@ public class Chrono {
 		return chrono;
 	}
 
+	/** Returns a stopped chrono with the given elapsed time in milliseconds. */
+	public static Chrono of(long elapsed) {
+		Chrono chrono = new Chrono();
+		chrono._elapsed = elapsed;
+		return chrono;
+	}
+
 	public void start() {
 
 		if (_isRunning) {
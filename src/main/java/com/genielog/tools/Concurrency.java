@@ -1,19 +1,29 @@
 package com.genielog.tools;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Spliterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
 
 import com.genielog.tools.functional.SerializableConsumer;
 
@@ -30,6 +40,24 @@ public class Concurrency {
 	private Runnable beforeEachParallelExecution;
 	private Runnable afterEachParallelExecution;
 	private int nbThreads = -1;
+
+	// When true, the chunk results are reduced in the encounter order of the source items.
+	private boolean ordered = false;
+
+	// Maximum number of chunks submitted and not yet reduced, 0 for 4 chunks per thread.
+	private int maxPendingChunks = 0;
+
+	// When defined, chunk results are looked up in this cache before being computed.
+	private MapRedCache resultCache = null;
+
+	// When true, each worker reduces all its chunks into a single accumulator.
+	private boolean workerAccumulators = false;
+
+	// When defined, receives the events of all the parallel executions.
+	private ConcurrencyMetrics metrics = null;
+
+	// Largest number of chunk results waiting in the reorder buffer during the last execution.
+	private int maxReorderedChunks = 0;
 	
 	public Concurrency(String name, int nbThreads) {
 		this.name = name;
@@ -38,10 +66,77 @@ public class Concurrency {
 		this.nbThreads = nbThreads;
 	}
 
+	/**
+	 * Sleep the given delay in milliseconds after each chunk submission.
+	 * 
+	 * @deprecated Throttle the operator with {@link MapRedOperator#setRateLimiter(RateLimiter)} instead.
+	 */
+	@Deprecated
 	public void setStartDelay(int delay) {
 		startDelay = delay;
 	}
 
+	/** When ordered, chunk results are reduced in the encounter order of the source items instead of completion order. */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/** Returns the largest number of chunk results waiting for the previous chunks during the last ordered execution. */
+	public int getMaxReorderedChunks() {
+		return maxReorderedChunks;
+	}
+
+	/**
+	 * Bounds the number of chunks loaded in memory and not yet reduced. In ordered mode, this also bounds the size of the
+	 * reorder buffer: no chunk is submitted more than maxPendingChunks after the next one to reduce.
+	 */
+	public void setMaxPendingChunks(int maxPendingChunks) {
+		this.maxPendingChunks = maxPendingChunks;
+	}
+
+	/**
+	 * Reuse the results of the chunks already processed by an operator with the same id. The chunks must be built the
+	 * same way from one run to the other (same chunk size and source order) for their results to be found again. The
+	 * cache counters are passed to the monitor listener at the end of each parallel execution.
+	 */
+	public void setResultCache(MapRedCache cache) {
+		this.resultCache = cache;
+	}
+
+	public MapRedCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * When enabled, each worker thread keeps a single accumulator for all the chunks it processes, and only the
+	 * accumulators of the workers are reduced at the end of the execution. This saves an initial value and a reduction
+	 * per chunk, which matters with small chunks. The chunks are then reduced in no particular order, so this mode can't
+	 * be combined with the ordered mode.
+	 */
+	public void setWorkerAccumulators(boolean enabled) {
+		this.workerAccumulators = enabled;
+	}
+
+	public boolean hasWorkerAccumulators() {
+		return workerAccumulators;
+	}
+
+	/**
+	 * Instrument the parallel executions with the given metrics, for example {@link ConcurrencyStats}. The metrics are
+	 * also passed to the monitor listener at the end of each parallel execution.
+	 */
+	public void setMetrics(ConcurrencyMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public ConcurrencyMetrics getMetrics() {
+		return metrics;
+	}
+
 	// This is the listener that, when defined, will be triggered after each mapper execution
 	SerializableConsumer<Object> listener = null;
 
@@ -74,6 +169,31 @@ public class Concurrency {
 	public <SOURCE, RESULT> RESULT parallel(Stream<SOURCE> sources,
 																					int chunkSize,
 																					MapRedOperator<SOURCE, RESULT> operator) {
+		return parallel(sources, chunkSize, operator, null);
+	}
+
+	/**
+	 * Executes an operator on the given source item, reducing the chunk results in the encounter order of the sources.
+	 * The Map part is still executed in parallel, and the result of each chunk is passed to the consumer (if any) as
+	 * soon as all the chunks before it have been reduced.
+	 */
+	public <SOURCE, RESULT> RESULT parallelOrdered(	Stream<SOURCE> sources,
+																									int chunkSize,
+																									MapRedOperator<SOURCE, RESULT> operator,
+																									Consumer<? super RESULT> chunkConsumer) {
+		boolean wasOrdered = ordered;
+		ordered = true;
+		try {
+			return parallel(sources, chunkSize, operator, chunkConsumer);
+		} finally {
+			ordered = wasOrdered;
+		}
+	}
+
+	private <SOURCE, RESULT> RESULT parallel(	Stream<SOURCE> sources,
+																						int chunkSize,
+																						MapRedOperator<SOURCE, RESULT> operator,
+																						Consumer<? super RESULT> chunkConsumer) {
 
 		if (operator == null) {
 			throw new IllegalArgumentException("Concurrent operator not defined.");
@@ -91,58 +211,43 @@ public class Concurrency {
 			nbThreads = Integer.max(2, Runtime.getRuntime().availableProcessors() - 2);
 		}
 		
+		boolean perWorker = workerAccumulators;
+		if (perWorker && ordered) {
+			throw new IllegalStateException("Ordered execution can't reduce chunks into per-worker accumulators.");
+		}
+
+		int maxPending = (maxPendingChunks > 0) ? maxPendingChunks : 4 * nbThreads;
+
 		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+		CompletionService<Pair<Integer, RESULT>> completion = new ExecutorCompletionService<>(executor);
 
 		operator.init();
 
+		final ConcurrencyMetrics runMetrics = metrics;
+		long runStart = System.nanoTime();
+		if (runMetrics != null) {
+			runMetrics.onRunStart(name, operator.id, nbThreads);
+		}
+
 		Spliterator<SOURCE> splitSources = sources.spliterator();
-		List<Future<RESULT>> mapFutures = new ArrayList<>();
 		aborted = false;
 
 		if (beforeEachParallelExecution != null)
 			beforeEachParallelExecution.run();
 
-		while (!aborted) {
-
-			//
-			// Create the chunk of source data to be processed by a same process
-			//
-			List<SOURCE> chunk = new ArrayList<>(chunkSize);
-			for (int i = 0; (i < chunkSize) && (!aborted) && splitSources.tryAdvance(chunk::add); i++)
-				;
-			if (chunk.isEmpty())
-				break;
-
-			//
-			// Launching a new process for the source data.
-			//
-			if (listener != null)
-				logger.debug("Starting a new chunk for {} entries", chunk.size());
-
-			Callable<RESULT> work = buildWork(() -> {
-				Thread.currentThread().setName(name + "-" + operator.id + "-" + mapFutures.size());
-				RESULT result = operator.exec(chunk.stream());
-				Thread.currentThread().setName(name + "-waiting-" + mapFutures.size());
-				return result;
-			});
-
-			Future<RESULT> future = executor.submit(work);
+		// Number of chunks submitted to the workers and number of chunks whose result is back.
+		int nbSubmitted = 0;
+		int nbCompleted = 0;
+		boolean exhausted = false;
 
-			mapFutures.add(future);
+		// In ordered mode, results received ahead of their turn wait here for the previous chunks.
+		Map<Integer, RESULT> reorderBuffer = new HashMap<>();
+		int nextSequence = 0;
+		maxReorderedChunks = 0;
 
-			try {
-				Thread.sleep(startDelay);
-			} catch (InterruptedException e) {
-
-			}
-
-		}
-
-		// logger.debug("Triggered {} concurrent tasks...", mapFutures.size());
-
-		//
-		// Reduction
-		//
+		// In per-worker mode, the accumulator of each worker thread.
+		Map<Thread, AtomicReference<RESULT>> accumulators = new ConcurrentHashMap<>();
+		boolean timedOut = false;
 
 		RESULT result = operator.initValueSupplier.get();
 
@@ -151,41 +256,124 @@ public class Concurrency {
 		//
 		// While all theads are not terminated, or the execution aborted.
 		//
-		while (!mapFutures.isEmpty() && !aborted() && !operator.isAborted()) {
+		while (!aborted() && !operator.isAborted()) {
 
-			// Fetch all available results from a thread.
-			Future<RESULT> future = mapFutures.stream().filter(Future::isDone).findFirst().orElse(null);
+			//
+			// Keep the workers busy, without loading more chunks in memory than needed. In ordered mode, the chunks
+			// completed but waiting in the reorder buffer are still in memory.
+			//
+			while (!exhausted && !aborted
+					&& ((ordered ? nbSubmitted - nextSequence : nbSubmitted - nbCompleted) < maxPending)) {
+				List<SOURCE> chunk = new ArrayList<>(chunkSize);
+				for (int i = 0; (i < chunkSize) && (!aborted) && splitSources.tryAdvance(chunk::add); i++)
+					;
+				if (chunk.isEmpty()) {
+					exhausted = true;
+				} else {
+					if (listener != null)
+						logger.debug("Starting a new chunk for {} entries", chunk.size());
+
+					final int sequence = nbSubmitted++;
+					completion.submit(() -> {
+						Thread.currentThread().setName(name + "-" + operator.id + "-" + sequence);
+						long chunkStart = (runMetrics != null) ? System.nanoTime() : 0L;
+						RESULT chunkResult = null;
+						if (perWorker) {
+							AtomicReference<RESULT> acc = accumulators.computeIfAbsent(Thread.currentThread(),
+									t -> new AtomicReference<>(operator.initValueSupplier.get()));
+							acc.set((resultCache == null) ? operator.accumulate(acc.get(), chunk.stream())
+									: operator.reducer.apply(acc.get(), resultCache.get(operator, chunk, () -> operator.exec(chunk.stream()))));
+						} else {
+							chunkResult = (resultCache == null) ? operator.exec(chunk.stream())
+									: resultCache.get(operator, chunk, () -> operator.exec(chunk.stream()));
+						}
+						if (runMetrics != null) {
+							runMetrics.onChunk(operator.id, chunk.size(), System.nanoTime() - chunkStart);
+						}
+						Thread.currentThread().setName(name + "-waiting-" + sequence);
+						return Pair.with(sequence, chunkResult);
+					});
+
+					if (runMetrics != null) {
+						runMetrics.onQueueDepth(operator.id, nbSubmitted - nbCompleted);
+					}
+
+					if (startDelay > 0) {
+						try {
+							Thread.sleep(startDelay);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							abort();
+						}
+					}
+				}
+			}
+
+			if (exhausted && (nbCompleted == nbSubmitted)) {
+				break;
+			}
+
+			//
+			// Reduction of the next available result
+			//
+			long elapsed = System.currentTimeMillis() - delay;
+			Future<Pair<Integer, RESULT>> future = null;
+			try {
+				future = completion.poll(Long.min(500L, Long.max(1L, executionTimeoutMilliSec - elapsed)), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort();
+			}
 
 			if (future != null) {
+				nbCompleted++;
 				try {
-					result = operator.reducer.apply(result, future.get());
+					Pair<Integer, RESULT> chunkResult = future.get();
+					long reduceStart = (runMetrics != null) ? System.nanoTime() : 0L;
+					if (ordered) {
+						reorderBuffer.put(chunkResult.getValue0(), chunkResult.getValue1());
+						maxReorderedChunks = Integer.max(maxReorderedChunks, reorderBuffer.size());
+						while (reorderBuffer.containsKey(nextSequence)) {
+							RESULT next = reorderBuffer.remove(nextSequence++);
+							if (chunkConsumer != null) {
+								chunkConsumer.accept(next);
+							}
+							result = operator.reducer.apply(result, next);
+						}
+					} else if (!perWorker) {
+						result = operator.reducer.apply(result, chunkResult.getValue1());
+					}
+					if (runMetrics != null) {
+						runMetrics.onReduce(operator.id, System.nanoTime() - reduceStart);
+						runMetrics.onQueueDepth(operator.id, nbSubmitted - nbCompleted);
+					}
 				} catch (InterruptedException | ExecutionException e) {
 					logger.error(" Concurrent execution aborted, because {}", e.getLocalizedMessage());
+					if (runMetrics != null) {
+						Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+						runMetrics.onAbort(operator.id, "error " + cause.getClass().getSimpleName());
+					}
 					abort();
 					e.printStackTrace();
 				}
-				mapFutures.remove(future);
-				future = mapFutures.stream().filter(Future::isDone).findFirst().orElse(null);
 
 				// Reset
 				delay = System.currentTimeMillis();
-			} else {
+			} else if (!aborted) {
 				//
 				// Check that we don't reach the timeout of unavailable result
 				//
-				long elapsed = System.currentTimeMillis() - delay;
+				elapsed = System.currentTimeMillis() - delay;
 				if (elapsed >= executionTimeoutMilliSec) {
 					logger.error("{}, Aborting because of timed out after {} mins", operator.id, elapsed / (1000 * 60));
+					if (runMetrics != null) {
+						runMetrics.onAbort(operator.id, "timeout");
+					}
 					operator.abort();
 					abort();
 					// Reset current results
 					result = operator.initValueSupplier.get();
-				} else {
-					try {
-						Thread.sleep(500);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
+					timedOut = true;
 				}
 			}
 
@@ -194,16 +382,58 @@ public class Concurrency {
 		// Force shuting down in case of abort
 		executor.shutdownNow();
 
+		if ((runMetrics != null) && !timedOut && (nbSubmitted > nbCompleted)) {
+			runMetrics.onAbort(operator.id, operator.isAborted() ? "operator" : "aborted");
+		}
+
+		//
+		// In per-worker mode, the reduction only occurs now, once per worker. After an abort, the accumulators are only
+		// merged once all the workers are stopped, otherwise the result is reset as on a timeout.
+		//
+		if (perWorker && !timedOut) {
+			boolean terminated = (nbSubmitted == nbCompleted);
+			if (!terminated) {
+				try {
+					terminated = executor.awaitTermination(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (terminated) {
+				long reduceStart = (runMetrics != null) ? System.nanoTime() : 0L;
+				for (AtomicReference<RESULT> acc : accumulators.values()) {
+					result = operator.reducer.apply(result, acc.get());
+				}
+				if (runMetrics != null) {
+					runMetrics.onReduce(operator.id, System.nanoTime() - reduceStart);
+				}
+			} else {
+				logger.warn("{}, Workers still running after abort, their accumulators are discarded", operator.id);
+				result = operator.initValueSupplier.get();
+			}
+		}
+
+		if (runMetrics != null) {
+			runMetrics.onRunEnd(operator.id, System.nanoTime() - runStart);
+			if (listener != null) {
+				listener.accept(runMetrics);
+			}
+		}
+
 		if (afterEachParallelExecution != null)
 			afterEachParallelExecution.run();
 
+		if ((resultCache != null) && (listener != null)) {
+			listener.accept(resultCache.getStats());
+		}
 
-		if (!mapFutures.isEmpty() && aborted()) {
+		int nbPending = nbSubmitted - nbCompleted;
+		if ((nbPending > 0) && aborted()) {
 			logger.warn("*******************************************************");
 			logger.warn("Concurrent execution terminated before finished.");
 			logger.warn("   Executor : {} ({})", name, aborted ? "aborted" : "not aborted");
 			logger.warn("   Operator : {} ({})", operator.id, operator.isAborted() ? "aborted" : "not aborted");
-			logger.warn("   Nb not terminated tasks {}", mapFutures.size());
+			logger.warn("   Nb not terminated tasks {}", nbPending);
 			logger.warn("*******************************************************");
 			throw new IllegalStateException("Concurrent execution timed out, waiting for a task for more than " + executionTimeoutMilliSec / 1000 + " secs");
 		}
@@ -212,6 +442,63 @@ public class Concurrency {
 
 	}
 
+	// ******************************************************************************************************************
+	// Reactive Streams
+	// ******************************************************************************************************************
+
+	/**
+	 * Subscribe to a publisher of source items and executes the operator on chunks of these items as they are pushed.
+	 * The returned publisher emits the reduction of each window of chunks, and completes once the source completes and
+	 * all its items have been processed.
+	 * 
+	 * @param source
+	 *          The upstream publisher, for example a {@link java.util.concurrent.SubmissionPublisher}.
+	 * @param chunkSize
+	 *          The number of items processed by a worker at once.
+	 * @param window
+	 *          The number of chunk results reduced together before being published, 1 to publish each chunk result.
+	 * @param operator
+	 *          The operator to execute.
+	 */
+	public <SOURCE, RESULT> Flow.Publisher<RESULT> subscribe(	Flow.Publisher<SOURCE> source,
+																														int chunkSize,
+																														int window,
+																														MapRedOperator<SOURCE, RESULT> operator) {
+
+		if (source == null) {
+			throw new IllegalArgumentException("Source publisher not defined.");
+		}
+
+		if (operator == null) {
+			throw new IllegalArgumentException("Concurrent operator not defined.");
+		}
+
+		if ((operator.mapper == null) || (operator.reducer == null) || (operator.initValueSupplier == null)) {
+			throw new IllegalArgumentException("Concurrent operator not fully defined.");
+		}
+
+		if (nbThreads <= 0) {
+			nbThreads = Integer.max(2, Runtime.getRuntime().availableProcessors() - 2);
+		}
+
+		int maxPending = (maxPendingChunks > 0) ? maxPendingChunks : 4 * nbThreads;
+
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+		MapRedProcessor<SOURCE, RESULT> processor = new MapRedProcessor<>(operator, executor, chunkSize, maxPending, window);
+
+		if (beforeEachParallelExecution != null)
+			beforeEachParallelExecution.run();
+
+		processor.onTerminate(() -> {
+			executor.shutdown();
+			if (afterEachParallelExecution != null)
+				afterEachParallelExecution.run();
+		});
+
+		source.subscribe(processor);
+		return processor;
+	}
+
 	volatile boolean aborted = false;
 
 	public boolean aborted() {
@@ -0,0 +1,34 @@
+package com.genielog.tools;
+
+/**
+ * Receives the events of the parallel executions of {@link Concurrency}. Chunk events are notified from the worker
+ * threads, all the others from the thread calling the execution, so implementations must be thread-safe and cheap. <br>
+ * {@link ConcurrencyStats} is the default implementation, aggregating the events per operator and publishing them as
+ * JMX MBeans.
+ */
+public interface ConcurrencyMetrics {
+
+	/** A parallel execution of the operator starts with the given number of workers. */
+	default void onRunStart(String executor, String operatorId, int nbThreads) {
+	}
+
+	/** A worker processed a chunk of source items, in the given time. */
+	default void onChunk(String operatorId, int nbItems, long nanos) {
+	}
+
+	/** The number of chunks submitted to the workers and not yet reduced changed. */
+	default void onQueueDepth(String operatorId, int pendingChunks) {
+	}
+
+	/** Chunk results have been reduced by the calling thread, in the given time. */
+	default void onReduce(String operatorId, long nanos) {
+	}
+
+	/** The execution is aborted for the given reason. */
+	default void onAbort(String operatorId, String reason) {
+	}
+
+	/** The parallel execution of the operator ends, after the given wall clock time. */
+	default void onRunEnd(String operatorId, long nanos) {
+	}
+}
@@ -0,0 +1,339 @@
+package com.genielog.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The default {@link ConcurrencyMetrics}, aggregating the events of the parallel executions per operator id. <br>
+ * All counters are lock-free, so the statistics can be left enabled in production. When a JMX domain is given, the
+ * statistics of each operator are registered as an MBean named
+ * <code>domain:type=Concurrency,operator=&lt;id&gt;</code> on the platform MBean server.
+ */
+public class ConcurrencyStats implements ConcurrencyMetrics {
+
+	protected static Logger logger = LogManager.getLogger(ConcurrencyStats.class);
+
+	/** The attributes exposed through JMX for each operator. */
+	public interface OperatorStatsMBean {
+
+		long getRuns();
+
+		long getChunks();
+
+		long getItems();
+
+		double getItemsPerSecond();
+
+		double getLastRunItemsPerSecond();
+
+		double getChunkLatencyP50Millis();
+
+		double getChunkLatencyP90Millis();
+
+		double getChunkLatencyP99Millis();
+
+		double getChunkLatencyMaxMillis();
+
+		double getBusyMillis();
+
+		double getIdleMillis();
+
+		double getUtilization();
+
+		int getQueueDepth();
+
+		long getQueueDepthMax();
+
+		double getQueueDepthMean();
+
+		double getReduceMillis();
+
+		String getAborts();
+
+		void reset();
+	}
+
+	/** The statistics of all the parallel executions of an operator. */
+	public static class OperatorStats implements OperatorStatsMBean {
+
+		private final String operatorId;
+
+		private final LongAdder runs = new LongAdder();
+		private final LongAdder items = new LongAdder();
+		private final LatencyHistogram chunkLatency = new LatencyHistogram();
+
+		// Wall clock time of the runs, and the same time multiplied by the number of workers.
+		private final LongAdder wallNanos = new LongAdder();
+		private final LongAdder workerNanos = new LongAdder();
+		private final LongAdder reduceNanos = new LongAdder();
+
+		private final AtomicInteger queueDepth = new AtomicInteger();
+		private final LongAccumulator queueDepthMax = new LongAccumulator(Long::max, 0L);
+		private final LongAdder queueDepthSum = new LongAdder();
+		private final LongAdder queueDepthSamples = new LongAdder();
+
+		private final Map<String, LongAdder> aborts = new ConcurrentHashMap<>();
+
+		// The current run, updated by the calling thread only.
+		private volatile int runThreads;
+		private volatile long runItemsAtStart;
+		private volatile double lastRunItemsPerSecond;
+
+		OperatorStats(String operatorId) {
+			this.operatorId = operatorId;
+		}
+
+		public String getOperatorId() {
+			return operatorId;
+		}
+
+		public LatencyHistogram getChunkLatency() {
+			return chunkLatency;
+		}
+
+		@Override
+		public long getRuns() {
+			return runs.sum();
+		}
+
+		@Override
+		public long getChunks() {
+			return chunkLatency.getCount();
+		}
+
+		@Override
+		public long getItems() {
+			return items.sum();
+		}
+
+		@Override
+		public double getItemsPerSecond() {
+			long wall = wallNanos.sum();
+			return (wall == 0) ? 0.0 : 1e9 * items.sum() / wall;
+		}
+
+		@Override
+		public double getLastRunItemsPerSecond() {
+			return lastRunItemsPerSecond;
+		}
+
+		@Override
+		public double getChunkLatencyP50Millis() {
+			return chunkLatency.getPercentile(0.50) / 1e6;
+		}
+
+		@Override
+		public double getChunkLatencyP90Millis() {
+			return chunkLatency.getPercentile(0.90) / 1e6;
+		}
+
+		@Override
+		public double getChunkLatencyP99Millis() {
+			return chunkLatency.getPercentile(0.99) / 1e6;
+		}
+
+		@Override
+		public double getChunkLatencyMaxMillis() {
+			return chunkLatency.getMax() / 1e6;
+		}
+
+		@Override
+		public double getBusyMillis() {
+			return chunkLatency.getSum() / 1e6;
+		}
+
+		@Override
+		public double getIdleMillis() {
+			return Double.max(0.0, (workerNanos.sum() - chunkLatency.getSum()) / 1e6);
+		}
+
+		@Override
+		public double getUtilization() {
+			long available = workerNanos.sum();
+			return (available == 0) ? 0.0 : Double.min(1.0, (double) chunkLatency.getSum() / available);
+		}
+
+		@Override
+		public int getQueueDepth() {
+			return queueDepth.get();
+		}
+
+		@Override
+		public long getQueueDepthMax() {
+			return queueDepthMax.get();
+		}
+
+		@Override
+		public double getQueueDepthMean() {
+			long n = queueDepthSamples.sum();
+			return (n == 0) ? 0.0 : (double) queueDepthSum.sum() / n;
+		}
+
+		@Override
+		public double getReduceMillis() {
+			return reduceNanos.sum() / 1e6;
+		}
+
+		@Override
+		public String getAborts() {
+			return aborts.entrySet().stream()
+					.map(entry -> entry.getKey() + "=" + entry.getValue().sum())
+					.sorted()
+					.collect(Collectors.joining(", "));
+		}
+
+		public Map<String, Long> getAbortCounts() {
+			return aborts.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+		}
+
+		@Override
+		public void reset() {
+			runs.reset();
+			items.reset();
+			chunkLatency.reset();
+			wallNanos.reset();
+			workerNanos.reset();
+			reduceNanos.reset();
+			queueDepthMax.reset();
+			queueDepthSum.reset();
+			queueDepthSamples.reset();
+			aborts.clear();
+			lastRunItemsPerSecond = 0.0;
+		}
+
+		public String toString() {
+			return String.format("%s: %d runs, %d items at %s items/sec, chunks %s, utilization %s%%, "
+					+ "queue depth max %d mean %s, reduce %sms%s",
+					operatorId, getRuns(), getItems(), Tools.fmt(getItemsPerSecond(), 0), chunkLatency,
+					Tools.fmt(100 * getUtilization(), 1), getQueueDepthMax(), Tools.fmt(getQueueDepthMean(), 1),
+					Tools.fmt(getReduceMillis(), 3), aborts.isEmpty() ? "" : ", aborts " + getAborts());
+		}
+	}
+
+	private final String jmxDomain;
+	private final Map<String, OperatorStats> operators = new ConcurrentHashMap<>();
+
+	/** Statistics without JMX registration. */
+	public ConcurrencyStats() {
+		this(null);
+	}
+
+	/** Statistics registered as MBeans in the given JMX domain, if not null. */
+	public ConcurrencyStats(String jmxDomain) {
+		this.jmxDomain = jmxDomain;
+	}
+
+	/** Returns the statistics of the operator, or null if it has never been executed. */
+	public OperatorStats get(String operatorId) {
+		return operators.get(String.valueOf(operatorId));
+	}
+
+	public Map<String, OperatorStats> getAll() {
+		return operators;
+	}
+
+	private OperatorStats of(String operatorId) {
+		return operators.computeIfAbsent(String.valueOf(operatorId), id -> {
+			OperatorStats stats = new OperatorStats(id);
+			register(stats);
+			return stats;
+		});
+	}
+
+	private void register(OperatorStats stats) {
+		if (jmxDomain != null) {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(jmxDomain + ":type=Concurrency,operator=" + ObjectName.quote(stats.operatorId));
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+				server.registerMBean(new StandardMBean(stats, OperatorStatsMBean.class), name);
+			} catch (JMException e) {
+				logger.error("Unable to register MBean for operator {} : {}", stats.operatorId, Tools.getExceptionMessages(e));
+			}
+		}
+	}
+
+	/** Unregister all the MBeans registered by these statistics. */
+	public void unregister() {
+		if (jmxDomain != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (OperatorStats stats : operators.values()) {
+				try {
+					ObjectName name = new ObjectName(jmxDomain + ":type=Concurrency,operator=" + ObjectName.quote(stats.operatorId));
+					if (server.isRegistered(name)) {
+						server.unregisterMBean(name);
+					}
+				} catch (JMException e) {
+					logger.error("Unable to unregister MBean for operator {} : {}", stats.operatorId, Tools.getExceptionMessages(e));
+				}
+			}
+		}
+	}
+
+	// ******************************************************************************************************************
+	// Events
+	// ******************************************************************************************************************
+
+	@Override
+	public void onRunStart(String executor, String operatorId, int nbThreads) {
+		OperatorStats stats = of(operatorId);
+		stats.runs.increment();
+		stats.runThreads = nbThreads;
+		stats.runItemsAtStart = stats.items.sum();
+		stats.queueDepth.set(0);
+	}
+
+	@Override
+	public void onChunk(String operatorId, int nbItems, long nanos) {
+		OperatorStats stats = of(operatorId);
+		stats.items.add(nbItems);
+		stats.chunkLatency.record(nanos);
+	}
+
+	@Override
+	public void onQueueDepth(String operatorId, int pendingChunks) {
+		OperatorStats stats = of(operatorId);
+		stats.queueDepth.set(pendingChunks);
+		stats.queueDepthMax.accumulate(pendingChunks);
+		stats.queueDepthSum.add(pendingChunks);
+		stats.queueDepthSamples.increment();
+	}
+
+	@Override
+	public void onReduce(String operatorId, long nanos) {
+		of(operatorId).reduceNanos.add(nanos);
+	}
+
+	@Override
+	public void onAbort(String operatorId, String reason) {
+		of(operatorId).aborts.computeIfAbsent(String.valueOf(reason), r -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void onRunEnd(String operatorId, long nanos) {
+		OperatorStats stats = of(operatorId);
+		stats.wallNanos.add(nanos);
+		stats.workerNanos.add(nanos * Integer.max(1, stats.runThreads));
+		long runItems = stats.items.sum() - stats.runItemsAtStart;
+		stats.lastRunItemsPerSecond = (nanos == 0) ? 0.0 : 1e9 * runItems / nanos;
+	}
+
+	public String toString() {
+		return operators.values().stream().map(OperatorStats::toString).sorted().collect(Collectors.joining("\n"));
+	}
+}
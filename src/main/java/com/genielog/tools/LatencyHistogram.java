@@ -0,0 +1,106 @@
+package com.genielog.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, cheap enough to record every event from concurrent threads. <br>
+ * Values are counted in log-linear buckets: each power of two is split into 8 sub-buckets, so the percentiles are
+ * reported with a relative error below 12.5% whatever the magnitude of the values.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+	private static final int NB_BUCKETS = (64 - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) Long.max(0L, value);
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKETS_BITS;
+		int sub = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** The highest value counted in the given bucket. */
+	private static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	public void record(long nanos) {
+		counts.incrementAndGet(indexOf(nanos));
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public double getMean() {
+		long n = count.sum();
+		return (n == 0) ? 0.0 : (double) sum.sum() / n;
+	}
+
+	/** Returns the value below which the given ratio (0.5 for the median) of the recorded values fall. */
+	public long getPercentile(double ratio) {
+		long n = 0;
+		long[] snapshot = new long[NB_BUCKETS];
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0L;
+		}
+		long rank = Long.max(1L, (long) Math.ceil(ratio * n));
+		long cumulated = 0;
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			cumulated += snapshot[i];
+			if (cumulated >= rank) {
+				return Long.min(upperBoundOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	public void reset() {
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			counts.set(i, 0L);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	public String toString() {
+		return String.format("n=%d p50=%sms p90=%sms p99=%sms max=%sms",
+				getCount(),
+				Tools.fmt(getPercentile(0.50) / 1e6, 3),
+				Tools.fmt(getPercentile(0.90) / 1e6, 3),
+				Tools.fmt(getPercentile(0.99) / 1e6, 3),
+				Tools.fmt(getMax() / 1e6, 3));
+	}
+}
@@ -0,0 +1,253 @@
+package com.genielog.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.genielog.tools.functional.SerializableFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A cache of chunk results for the operators executed by {@link Concurrency}. <br>
+ * Results are keyed by the operator id and a fingerprint of the content of the chunk, so when an operator runs again
+ * over mostly unchanged data, only the chunks whose content changed are executed again. The operator id is expected to
+ * identify the computation: two operators sharing an id share their cached results. <br>
+ * The least recently used results are evicted beyond the maximum number of entries, and the cache can be saved to and
+ * loaded from a file, provided the results are {@link Serializable}. <br>
+ * Cached results are handed to the reducer as the contribution of a chunk, so the reducer must not modify its second
+ * argument (the built-in operators of {@link MapRedOperator} don't).
+ */
+public class MapRedCache {
+
+	protected static Logger logger = LogManager.getLogger(MapRedCache.class);
+
+	/** A snapshot of the cache counters, as reported to the monitor listener of {@link Concurrency}. */
+	public static class Stats implements Serializable {
+
+		private static final long serialVersionUID = -5000472016155497519L;
+
+		public final long hits;
+		public final long misses;
+		public final long evictions;
+		public final int size;
+
+		Stats(long hits, long misses, long evictions, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+		}
+
+		public double hitRatio() {
+			return (hits + misses == 0) ? 0.0 : (double) hits / (hits + misses);
+		}
+
+		public String toString() {
+			return String.format("Cache %d hits, %d misses (%s%%), %d evictions, %d entries",
+					hits, misses, Tools.fmt(100 * hitRatio(), 1), evictions, size);
+		}
+	}
+
+	private final int maxEntries;
+	private final LinkedHashMap<String, Object> entries;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	// Optional content of an item to fingerprint, instead of its hash code.
+	private SerializableFunction<Object, String> itemContent = null;
+
+	// Classes of the items already reported as fingerprinted from their hash code, or as not cacheable.
+	private final Set<Class<?>> warned = ConcurrentHashMap.newKeySet();
+
+	public MapRedCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("Cache size must be strictly positive.");
+		}
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+				boolean evict = size() > MapRedCache.this.maxEntries;
+				if (evict) {
+					evictions.increment();
+				}
+				return evict;
+			}
+		};
+	}
+
+	/**
+	 * By default, a chunk is fingerprinted from the string value of its items when they are strings, numbers, booleans,
+	 * characters or enums, and from the hash codes of other items, with a warning since distinct contents may collide.
+	 * Chunks holding items which don't override hashCode() aren't cached at all, since their identity hash code doesn't
+	 * change when they are modified. The fingerprint can instead be computed from a string content of each item.
+	 */
+	public void setItemContent(SerializableFunction<Object, String> itemContent) {
+		this.itemContent = itemContent;
+	}
+
+	// ******************************************************************************************************************
+	// Lookup
+	// ******************************************************************************************************************
+
+	/** Returns the fingerprint of the content of a chunk, or null when its content can't be fingerprinted. */
+	public String fingerprint(List<?> chunk) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		hasher.putInt(chunk.size());
+		for (Object item : chunk) {
+			if (itemContent != null) {
+				hasher.putString(String.valueOf(itemContent.apply(item)), StandardCharsets.UTF_8);
+			} else if (item == null) {
+				hasher.putByte((byte) 0);
+			} else if ((item instanceof CharSequence) || (item instanceof Number) || (item instanceof Boolean)
+					|| (item instanceof Character) || (item instanceof Enum)) {
+				hasher.putString(item.getClass().getName(), StandardCharsets.UTF_8);
+				hasher.putString(item.toString(), StandardCharsets.UTF_8);
+			} else if (overridesHashCode(item.getClass())) {
+				if (warned.add(item.getClass())) {
+					logger.warn("Items of {} fingerprinted from their hash code, which may collide : set an item content.",
+							item.getClass().getName());
+				}
+				hasher.putInt(item.hashCode());
+			} else {
+				if (warned.add(item.getClass())) {
+					logger.warn("Chunks of {} not cached, because it doesn't override hashCode() : set an item content.",
+							item.getClass().getName());
+				}
+				return null;
+			}
+		}
+		return hasher.hash().toString();
+	}
+
+	private static boolean overridesHashCode(Class<?> type) {
+		try {
+			return type.getMethod("hashCode").getDeclaringClass() != Object.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the result cached for the chunk or computes it. A result computed while the operator has been aborted
+	 * is partial and isn't cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public <RESULT> RESULT get(MapRedOperator<?, RESULT> operator, List<?> chunk, Supplier<RESULT> compute) {
+		String fingerprint = fingerprint(chunk);
+		if (fingerprint == null) {
+			misses.increment();
+			return compute.get();
+		}
+		String key = operator.id + ":" + fingerprint;
+
+		Object cached;
+		synchronized (entries) {
+			cached = entries.get(key);
+		}
+
+		if (cached != null) {
+			hits.increment();
+			return (RESULT) cached;
+		}
+
+		misses.increment();
+		RESULT result = compute.get();
+		if ((result != null) && !operator.isAborted()) {
+			synchronized (entries) {
+				entries.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public Stats getStats() {
+		return new Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+	}
+
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	// ******************************************************************************************************************
+	// Persistence
+	// ******************************************************************************************************************
+
+	/** Saves all the serializable results in the given file, returns false on failure. */
+	public boolean save(File file) {
+		boolean result = (file != null);
+		if (result) {
+			LinkedHashMap<String, Object> snapshot = new LinkedHashMap<>();
+			synchronized (entries) {
+				entries.forEach((key, value) -> {
+					if (value instanceof Serializable) {
+						snapshot.put(key, value);
+					} else {
+						logger.debug("Result cached for {} not saved, because it's not serializable.", key);
+					}
+				});
+			}
+			try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+				oos.writeObject(snapshot);
+			} catch (IOException e) {
+				logger.error("Unable to save cache in {} : {}", file.getAbsolutePath(), Tools.getExceptionMessages(e));
+				result = false;
+			}
+		}
+		return result;
+	}
+
+	/** Loads the results saved in the given file, in addition to the results already cached. */
+	@SuppressWarnings("unchecked")
+	public boolean load(File file) {
+		boolean result = (file != null) && file.isFile();
+		if (result) {
+			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				Map<String, Object> saved = (Map<String, Object>) ois.readObject();
+				synchronized (entries) {
+					entries.putAll(saved);
+				}
+			} catch (IOException | ClassNotFoundException | ClassCastException e) {
+				logger.error("Unable to load cache from {} : {}", file.getAbsolutePath(), Tools.getExceptionMessages(e));
+				result = false;
+			}
+		}
+		return result;
+	}
+}
@@ -19,7 +19,7 @@ public class MapRedOperator<ITEM, RESULT> implements Serializable {
 	protected transient Logger logger = null;
 
 	private static final long serialVersionUID = 6416474010519151325L;
-	private volatile boolean isAborted = false;
+	protected volatile boolean isAborted = false;
 
 
 	public String id;
@@ -35,6 +35,9 @@ public class MapRedOperator<ITEM, RESULT> implements Serializable {
 
 	public SerializableSupplier<RESULT> initValueSupplier;
 
+	// The optional throttle shared by all the workers executing this operator.
+	public RateLimiter rateLimiter;
+
 	/** Build an operator to search for the first item in a sequence matching the given predicate. */
 	public static <ITEM> MapRedOperator<ITEM, ITEM> findAny(SerializablePredicate<ITEM> finder) {
 		MapRedOperator<ITEM, ITEM> result = new MapRedOperator<>("findAny");
@@ -115,6 +118,13 @@ public class MapRedOperator<ITEM, RESULT> implements Serializable {
 
 	public MapRedOperator(MapRedOperator<ITEM,RESULT> other) {
 		this(other.id,other.filter,other.mapper,other.reducer,other.initValueSupplier);
+		this.rateLimiter = other.rateLimiter;
+	}
+
+	/** Throttle the execution of this operator, whatever the number of workers executing it. */
+	public MapRedOperator<ITEM, RESULT> setRateLimiter(RateLimiter limiter) {
+		this.rateLimiter = limiter;
+		return this;
 	}
 	//
 	//
@@ -157,12 +167,53 @@ public class MapRedOperator<ITEM, RESULT> implements Serializable {
 
 		// NO The operator is executed in Concurrent, each thread may change isAborted
 		// isAborted = false;
-		RESULT r = initValueSupplier.get();
-		return t
-				.takeWhile(item -> !isAborted) // The operator can trigger an abort command itself
-				.filter(item -> filter == null || filter.test(item)) // The operator may define a filter
-				.map(mapper) // applies the map
-				.reduce(r, reducer); // and then the reduction
+		return accumulate(initValueSupplier.get(), t);
+	}
+
+	/**
+	 * Execute the operator on a sequence of source items, reducing the results into the given accumulator instead of a
+	 * new initial value. This lets a worker keep the same accumulator for all the chunks it processes.
+	 */
+	public RESULT accumulate(RESULT r, Stream<? extends ITEM> t) {
+
+		if (rateLimiter == null) {
+			return t
+					.takeWhile(item -> !isAborted) // The operator can trigger an abort command itself
+					.filter(item -> filter == null || filter.test(item)) // The operator may define a filter
+					.map(mapper) // applies the map
+					.reduce(r, reducer); // and then the reduction
+		}
+
+		try {
+			rateLimiter.enterChunk();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort();
+			return r;
+		}
+
+		try {
+			return t
+					.takeWhile(item -> !isAborted)
+					.filter(item -> filter == null || filter.test(item))
+					.takeWhile(this::throttle) // waits for a permit before mapping the item
+					.map(mapper)
+					.reduce(r, reducer);
+		} finally {
+			rateLimiter.exitChunk();
+		}
+	}
+
+	/** Wait for the rate limiter to grant the mapping of one more item, returns false if interrupted meanwhile. */
+	protected boolean throttle(ITEM item) {
+		try {
+			rateLimiter.enterItem();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort();
+			return false;
+		}
 	}
 
 }
@@ -0,0 +1,216 @@
+package com.genielog.tools;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.genielog.tools.functional.SerializableBiFunction;
+import com.genielog.tools.functional.SerializableBinaryOperator;
+import com.genielog.tools.functional.SerializableConsumer;
+import com.genielog.tools.functional.SerializableFunction;
+import com.genielog.tools.functional.SerializablePredicate;
+import com.genielog.tools.functional.SerializableSupplier;
+
+/**
+ * A fluent builder of {@link MapRedOperator} chaining filter, map and flatMap stages before a final reduction. <br>
+ * Instead of running one operator per stage and collecting a list between each of them, all the stages are fused into
+ * a single operator: each item of a chunk is pushed through the whole chain of stages and directly accumulated into the
+ * chunk result. There's no intermediate collection and the chunks are executed by {@link Concurrency} as any other
+ * operator. All the stages are {@link Serializable}, and so is the fused operator.
+ *
+ * <pre>
+ * MapRedOperator&lt;String, Long&gt; op = MapRedPipeline.&lt;String&gt;from("words")
+ * 		.filter(line -&gt; !line.isBlank())
+ * 		.flatMap(line -&gt; Arrays.stream(line.split(" ")))
+ * 		.map(String::length)
+ * 		.reduce(() -&gt; 0L, (sum, len) -&gt; sum + len, Long::sum);
+ * </pre>
+ *
+ * @param <SOURCE>
+ *          The type of the source items of the pipeline
+ * @param <OUT>
+ *          The type of the items produced by the last stage
+ */
+public class MapRedPipeline<SOURCE, OUT> implements Serializable {
+
+	private static final long serialVersionUID = -2207622018522914398L;
+
+	/** A stateless stage pushing the items it produces from an input item to the downstream stage. */
+	@FunctionalInterface
+	protected interface Stage extends Serializable {
+		void push(Object item, Consumer<Object> downstream);
+	}
+
+	private final String id;
+	private final List<Stage> stages;
+
+	private MapRedPipeline(String id, List<Stage> stages) {
+		this.id = id;
+		this.stages = stages;
+	}
+
+	/** Start a new pipeline from the source items. */
+	public static <SOURCE> MapRedPipeline<SOURCE, SOURCE> from(String id) {
+		return new MapRedPipeline<>(id, Collections.emptyList());
+	}
+
+	private <R> MapRedPipeline<SOURCE, R> then(Stage stage) {
+		List<Stage> next = new ArrayList<>(stages);
+		next.add(stage);
+		return new MapRedPipeline<>(id, next);
+	}
+
+	// ******************************************************************************************************************
+	// Stages
+	// ******************************************************************************************************************
+
+	/** Only items matching the predicate go to the next stages. */
+	@SuppressWarnings("unchecked")
+	public MapRedPipeline<SOURCE, OUT> filter(SerializablePredicate<? super OUT> predicate) {
+		return then((item, downstream) -> {
+			if (predicate.test((OUT) item)) {
+				downstream.accept(item);
+			}
+		});
+	}
+
+	/** Each item is transformed by the function before going to the next stages. */
+	@SuppressWarnings("unchecked")
+	public <R> MapRedPipeline<SOURCE, R> map(SerializableFunction<? super OUT, ? extends R> function) {
+		return then((item, downstream) -> downstream.accept(function.apply((OUT) item)));
+	}
+
+	/** Each item is replaced by the items of the stream returned by the function. */
+	@SuppressWarnings("unchecked")
+	public <R> MapRedPipeline<SOURCE, R> flatMap(SerializableFunction<? super OUT, ? extends Stream<? extends R>> function) {
+		return then((item, downstream) -> {
+			try (Stream<? extends R> produced = function.apply((OUT) item)) {
+				if (produced != null) {
+					produced.forEach(downstream);
+				}
+			}
+		});
+	}
+
+	/** Executes the action on each item going through this stage. */
+	@SuppressWarnings("unchecked")
+	public MapRedPipeline<SOURCE, OUT> peek(SerializableConsumer<? super OUT> action) {
+		return then((item, downstream) -> {
+			action.accept((OUT) item);
+			downstream.accept(item);
+		});
+	}
+
+	// ******************************************************************************************************************
+	// Reductions
+	// ******************************************************************************************************************
+
+	/**
+	 * Build the fused operator.
+	 *
+	 * @param initValueSupplier
+	 *          The initial value of each chunk result.
+	 * @param accumulator
+	 *          Accumulates an item produced by the last stage into a chunk result.
+	 * @param combiner
+	 *          Combines two chunk results.
+	 */
+	public <RESULT> MapRedOperator<SOURCE, RESULT> reduce(SerializableSupplier<RESULT> initValueSupplier,
+																												SerializableBiFunction<RESULT, ? super OUT, RESULT> accumulator,
+																												SerializableBinaryOperator<RESULT> combiner) {
+		return new FusedOperator<>(id, stages, initValueSupplier, accumulator, combiner);
+	}
+
+	/** Build a fused operator collecting all the items produced by the last stage. */
+	public MapRedOperator<SOURCE, List<OUT>> toList() {
+		return reduce(ArrayList::new,
+				(List<OUT> list, OUT item) -> {
+					list.add(item);
+					return list;
+				},
+				(prev, contrib) -> {
+					prev.addAll(contrib);
+					return prev;
+				});
+	}
+
+	/** Build a fused operator counting the items produced by the last stage. */
+	public MapRedOperator<SOURCE, Long> count() {
+		return reduce(() -> 0L, (Long count, OUT item) -> count + 1, Long::sum);
+	}
+
+	// ******************************************************************************************************************
+	// Fused Operator
+	// ******************************************************************************************************************
+
+	/** The operator pushing each item of a chunk through all the stages in a single loop. */
+	static class FusedOperator<SOURCE, OUT, RESULT> extends MapRedOperator<SOURCE, RESULT> {
+
+		private static final long serialVersionUID = 8016656311911405010L;
+
+		private final List<Stage> stages;
+		private final SerializableBiFunction<RESULT, ? super OUT, RESULT> accumulator;
+
+		FusedOperator(String id,
+			List<Stage> stages,
+			SerializableSupplier<RESULT> initValueSupplier,
+			SerializableBiFunction<RESULT, ? super OUT, RESULT> accumulator,
+			SerializableBinaryOperator<RESULT> combiner) {
+			super(id);
+
+			if ((initValueSupplier == null) || (accumulator == null) || (combiner == null)) {
+				throw new IllegalArgumentException("The reduction of the pipeline is not fully defined.");
+			}
+
+			this.stages = new ArrayList<>(stages);
+			this.accumulator = accumulator;
+			this.initValueSupplier = initValueSupplier;
+			this.reducer = combiner;
+
+			// Executing the pipeline on a single item, for callers not going through exec()
+			this.mapper = (SOURCE item) -> run(Stream.of(item), this.initValueSupplier.get());
+		}
+
+		@Override
+		public RESULT accumulate(RESULT r, Stream<? extends SOURCE> t) {
+
+			if (rateLimiter == null) {
+				return run(t, r);
+			}
+
+			try {
+				rateLimiter.enterChunk();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort();
+				return r;
+			}
+
+			try {
+				return run(t.takeWhile(this::throttle), r);
+			} finally {
+				rateLimiter.exitChunk();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private RESULT run(Stream<? extends SOURCE> t, RESULT init) {
+			Object[] acc = { init };
+
+			// The chain of stages is built once per chunk, from the last one up to the first one.
+			Consumer<Object> sink = item -> acc[0] = accumulator.apply((RESULT) acc[0], (OUT) item);
+			for (int i = stages.size() - 1; i >= 0; i--) {
+				Stage stage = stages.get(i);
+				Consumer<Object> downstream = sink;
+				sink = item -> stage.push(item, downstream);
+			}
+
+			Consumer<Object> chain = sink;
+			t.takeWhile(item -> !isAborted).forEach(chain);
+			return (RESULT) acc[0];
+		}
+	}
+}
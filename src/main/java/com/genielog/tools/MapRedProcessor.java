@@ -0,0 +1,240 @@
+package com.genielog.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A {@link Flow.Processor} executing a {@link MapRedOperator} on the items pushed by an upstream publisher. <br>
+ * Items are grouped in chunks executed by the workers of an executor service. The upstream is only requested for as
+ * many items as can be held by the pending chunks, so a slow operator slows down the producer instead of buffering its
+ * items. Chunk results are reduced per window of chunks and each window result is published downstream; the
+ * downstream subscribers apply their own backpressure through the {@link SubmissionPublisher}.
+ */
+public class MapRedProcessor<ITEM, RESULT> implements Flow.Processor<ITEM, RESULT> {
+
+	protected Logger logger = LogManager.getLogger(MapRedProcessor.class);
+
+	private final MapRedOperator<ITEM, RESULT> operator;
+	private final ExecutorService executor;
+	private final int chunkSize;
+	private final int maxPendingChunks;
+	private final int window;
+	private final SubmissionPublisher<RESULT> publisher;
+
+	private Flow.Subscription subscription;
+	private List<ITEM> chunk;
+
+	// Guards the calls to the subscription, which must be serial (Reactive Streams rule 2.7) while the workers request
+	// more items concurrently.
+	private final Object signals = new Object();
+
+	// Number of chunks submitted to the workers and not yet reduced.
+	private final AtomicInteger pending = new AtomicInteger();
+	private volatile boolean upstreamDone = false;
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+
+	// The reduction of the chunks of the current window, guarded by this.
+	private RESULT windowResult;
+	private int windowCount = 0;
+
+	private Runnable onTerminate = null;
+
+	/**
+	 * @param operator
+	 *          The operator executed on each chunk of items.
+	 * @param executor
+	 *          The executor service providing the workers.
+	 * @param chunkSize
+	 *          The number of items per chunk.
+	 * @param maxPendingChunks
+	 *          The maximum number of chunks requested from the upstream and not yet reduced.
+	 * @param window
+	 *          The number of chunk results reduced together before being published, 1 to publish each chunk result.
+	 */
+	public MapRedProcessor(	MapRedOperator<ITEM, RESULT> operator,
+													ExecutorService executor,
+													int chunkSize,
+													int maxPendingChunks,
+													int window) {
+
+		if (operator == null) {
+			throw new IllegalArgumentException("Concurrent operator not defined.");
+		}
+
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor service not defined.");
+		}
+
+		if ((chunkSize <= 0) || (maxPendingChunks <= 0) || (window <= 0)) {
+			throw new IllegalArgumentException("Chunk size, pending chunks and window must be strictly positive.");
+		}
+
+		this.operator = operator;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = maxPendingChunks;
+		this.window = window;
+		this.publisher = new SubmissionPublisher<>();
+		this.chunk = new ArrayList<>(chunkSize);
+		this.windowResult = operator.initValueSupplier.get();
+	}
+
+	/** Action executed once, when the processor has published all its results or failed. */
+	public void onTerminate(Runnable action) {
+		this.onTerminate = action;
+	}
+
+	// ******************************************************************************************************************
+	// Downstream
+	// ******************************************************************************************************************
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super RESULT> subscriber) {
+		publisher.subscribe(subscriber);
+	}
+
+	// ******************************************************************************************************************
+	// Upstream
+	// ******************************************************************************************************************
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		operator.init();
+		request((long) chunkSize * maxPendingChunks);
+	}
+
+	@Override
+	public void onNext(ITEM item) {
+		if (finished.get()) {
+			return;
+		}
+		if (operator.isAborted()) {
+			cancel();
+			onComplete();
+			return;
+		}
+		chunk.add(item);
+		if (chunk.size() >= chunkSize) {
+			submitChunk();
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		logger.error("Upstream publisher of {} failed, because {}", operator.id, Tools.getExceptionMessages(throwable));
+		fail(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		if (!chunk.isEmpty()) {
+			submitChunk();
+		}
+		upstreamDone = true;
+		tryFinish();
+	}
+
+	// ******************************************************************************************************************
+	// Execution
+	// ******************************************************************************************************************
+
+	private void submitChunk() {
+		List<ITEM> items = chunk;
+		chunk = new ArrayList<>(chunkSize);
+		pending.incrementAndGet();
+		try {
+			executor.execute(() -> {
+				try {
+					RESULT result = operator.exec(items.stream());
+					reduce(result);
+					if (!operator.isAborted() && !finished.get()) {
+						request(items.size());
+					}
+				} catch (Exception e) {
+					logger.error("Operator {} failed on a chunk, because {}", operator.id, Tools.getExceptionMessages(e));
+					cancel();
+					fail(e);
+				}
+				if (pending.decrementAndGet() == 0) {
+					tryFinish();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.decrementAndGet();
+			cancel();
+			fail(e);
+		}
+	}
+
+	private void request(long n) {
+		synchronized (signals) {
+			subscription.request(n);
+		}
+	}
+
+	private void cancel() {
+		synchronized (signals) {
+			subscription.cancel();
+		}
+	}
+
+	private void reduce(RESULT result) {
+		RESULT completed = null;
+		synchronized (this) {
+			windowResult = operator.reducer.apply(windowResult, result);
+			windowCount++;
+			if (windowCount >= window) {
+				completed = windowResult;
+				windowResult = operator.initValueSupplier.get();
+				windowCount = 0;
+			}
+		}
+		if (completed != null) {
+			publisher.submit(completed);
+		}
+	}
+
+	private void tryFinish() {
+		if (upstreamDone && (pending.get() == 0) && finished.compareAndSet(false, true)) {
+			RESULT last = null;
+			synchronized (this) {
+				if (windowCount > 0) {
+					last = windowResult;
+					windowCount = 0;
+				}
+			}
+			if (last != null) {
+				publisher.submit(last);
+			}
+			publisher.close();
+			terminate();
+		}
+	}
+
+	private void fail(Throwable throwable) {
+		if (finished.compareAndSet(false, true)) {
+			publisher.closeExceptionally(throwable);
+			terminate();
+		}
+	}
+
+	private void terminate() {
+		if (onTerminate != null) {
+			onTerminate.run();
+		}
+	}
+}
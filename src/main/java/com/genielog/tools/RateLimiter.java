@@ -0,0 +1,164 @@
+package com.genielog.tools;
+
+import java.io.Serializable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket throttling the execution of a {@link MapRedOperator}. The same limiter is shared by all the workers
+ * executing the operator, so the rate applies to the operator as a whole and not to each thread. <br>
+ * The rate is expressed either in items per second (one permit per mapped item) or in chunks per second (one permit
+ * per chunk of source items). An optional cap limits the number of chunks processed at the same time.
+ */
+public class RateLimiter implements Serializable {
+
+	private static final long serialVersionUID = -3650317474541305377L;
+
+	public enum Unit {
+		ITEMS, CHUNKS
+	}
+
+	private final Unit unit;
+	private final double permitsPerSecond;
+	private final double burst;
+	private final int maxConcurrency;
+
+	// Token bucket state, reset when the limiter is deserialized.
+	private transient double nanosPerPermit;
+	private transient double storedPermits;
+	private transient long lastRefill;
+	private transient Semaphore slots;
+
+	/** Build a limiter granting the given number of mapped items per second. */
+	public static RateLimiter itemsPerSecond(double rate) {
+		return new RateLimiter(Unit.ITEMS, rate, 1.0, 0);
+	}
+
+	/** Build a limiter granting the given number of chunks per second. */
+	public static RateLimiter chunksPerSecond(double rate) {
+		return new RateLimiter(Unit.CHUNKS, rate, 1.0, 0);
+	}
+
+	/** Build a limiter that only caps the number of chunks processed concurrently. */
+	public static RateLimiter concurrency(int maxConcurrency) {
+		return new RateLimiter(Unit.CHUNKS, 0, 1.0, maxConcurrency);
+	}
+
+	/**
+	 * @param unit
+	 *          What a permit stands for.
+	 * @param permitsPerSecond
+	 *          The sustained rate, 0 or less for no rate limitation.
+	 * @param burst
+	 *          The maximum number of permits that can be stored while the operator is idle.
+	 * @param maxConcurrency
+	 *          The maximum number of chunks processed at the same time, 0 or less for no cap.
+	 */
+	public RateLimiter(Unit unit, double permitsPerSecond, double burst, int maxConcurrency) {
+		if (unit == null) {
+			throw new IllegalArgumentException("Rate limiter unit not defined.");
+		}
+		if (burst < 1.0) {
+			throw new IllegalArgumentException("Rate limiter burst must be at least one permit.");
+		}
+		this.unit = unit;
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+		this.maxConcurrency = maxConcurrency;
+		reset();
+	}
+
+	/** Returns a copy of this limiter allowing the given burst of permits. */
+	public RateLimiter withBurst(double burst) {
+		return new RateLimiter(unit, permitsPerSecond, burst, maxConcurrency);
+	}
+
+	/** Returns a copy of this limiter with the given concurrency cap. */
+	public RateLimiter withMaxConcurrency(int maxConcurrency) {
+		return new RateLimiter(unit, permitsPerSecond, burst, maxConcurrency);
+	}
+
+	private void reset() {
+		nanosPerPermit = (permitsPerSecond > 0) ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+		storedPermits = burst;
+		lastRefill = System.nanoTime();
+		slots = (maxConcurrency > 0) ? new Semaphore(maxConcurrency, true) : null;
+	}
+
+	private Object readResolve() {
+		reset();
+		return this;
+	}
+
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public double getRate() {
+		return permitsPerSecond;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	// ******************************************************************************************************************
+	// Permits
+	// ******************************************************************************************************************
+
+	/**
+	 * Reserve the permits and returns how long the caller should wait before using them. Permits are handed out in
+	 * reservation order: when the bucket is empty, the stored permits go negative and the next callers wait longer.
+	 */
+	private synchronized long reserve(int permits) {
+		long now = System.nanoTime();
+		storedPermits = Math.min(burst, storedPermits + (now - lastRefill) / nanosPerPermit);
+		lastRefill = now;
+		storedPermits -= permits;
+		return (storedPermits >= 0) ? 0L : (long) (-storedPermits * nanosPerPermit);
+	}
+
+	/** Blocks until the given number of permits is available. */
+	public void acquire(int permits) throws InterruptedException {
+		if ((nanosPerPermit > 0) && (permits > 0)) {
+			long wait = reserve(permits);
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+
+	/** Blocks until the calling worker is allowed to start processing a new chunk. */
+	public void enterChunk() throws InterruptedException {
+		if (slots != null) {
+			slots.acquire();
+		}
+		if (unit == Unit.CHUNKS) {
+			try {
+				acquire(1);
+			} catch (InterruptedException e) {
+				exitChunk();
+				throw e;
+			}
+		}
+	}
+
+	/** Releases the concurrency slot taken by {@link #enterChunk()}. */
+	public void exitChunk() {
+		if (slots != null) {
+			slots.release();
+		}
+	}
+
+	/** Blocks until the calling worker is allowed to map one more item. */
+	public void enterItem() throws InterruptedException {
+		if (unit == Unit.ITEMS) {
+			acquire(1);
+		}
+	}
+
+	public String toString() {
+		return String.format("%s per second %s, burst %s, max concurrency %d",
+				Tools.fmt(permitsPerSecond, 2), unit, Tools.fmt(burst, 1), maxConcurrency);
+	}
+}
@@ -1,26 +1,18 @@
 package com.genielog.tools;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -33,78 +25,40 @@ public class ResUtils {
 	}
 	
 	/**
-	 * Resources are defined in a configuration file or embedded into the Jar file.
+	 * Resources are defined in a configuration file or embedded into the Jar file. <br>
+	 * Returns the content of the first resource below the path whose name ends with the given one, or null. The
+	 * resources are searched in the index of the jar or classpath directory providing the path.
 	 */
 	public static String getResource(Class fromClass, String path, String resource) {
 		String result = null;
 
-		URI uri = null;
-		try {
-			URL url = fromClass.getResource(path);
-			uri = (url != null) ? url.toURI() : null;
-		} catch (URISyntaxException e) {
-			logger.error("Unable to create URI from Jar {}", e.getMessage());
-		}
-
-		if (uri == null) {
+		ResourceIndex index = ResourceIndex.forResource(fromClass, path);
+		if (index == null) {
 			logger.error("Unable to initialize configuration without a config directory specified.");
 		} else {
-
-			//
-			// Load the resource from the executable JAR
-			//
-			if (uri.getScheme().contains("jar")) {
-
-				logger.debug("Looking for resource from Jar at {}", uri.getScheme());
-
-				List<Path> match = searchPath(fromClass, null, path, ".*/" + resource);
-				if (!match.isEmpty()) {
-					try (InputStream is = fromClass.getResourceAsStream(match.get(0).toString())) {
-						
-						result = IOUtils.toString(is, StandardCharsets.UTF_8);
-					} catch (IOException e) {
-						logger.error("Unable to load checker definition from Jar {}", e.getLocalizedMessage());
-						e.printStackTrace();
-					}
-				}
-
-				if (result == null) {
-					logger.error("Ressource not found in Jar '{}'", resource);
-				}
-
-			}
-
-			//
-			// Load the checkers from a FS directory (classpath as for running in the IDE)
-			//
-			else {
-				try {
-					URL url = fromClass.getResource(path);
-					if (url == null) {
-						logger.error("Unable to initialize configuration without a config directory specified.");
-					} else {
-						File dir = new File(url.toURI());
-						WildcardFileFilter filter = new WildcardFileFilter("*" + resource);
-						Iterator<File> allFiles = FileUtils.iterateFiles(dir, filter, DirectoryFileFilter.DIRECTORY);
-						File match = allFiles.hasNext() ? allFiles.next() : null;
-						if (match != null) {
-							logger.debug("Resource {} found in File System at {}", resource, match.getAbsolutePath());
-							result = FileUtils.readFileToString(match, "UTF8");
-						}
-					}
-				} catch (IOException | URISyntaxException e) {
+			List<String> match = index.find(path, ".*" + Pattern.quote(resource));
+			if (!match.isEmpty()) {
+				logger.debug("Resource {} found at {} in {}", resource, match.get(0), index.getRoot());
+				try (InputStream is = index.open(match.get(0))) {
+					result = IOUtils.toString(is, StandardCharsets.UTF_8);
+				} catch (IOException e) {
+					logger.error("Unable to load resource {} : {}", match.get(0), e.getLocalizedMessage());
 					e.printStackTrace();
 				}
 			}
 			if (result == null) {
-				logger.error("Resource not found in File System '{}'", resource);
+				logger.error("Resource not found '{}' in {}", resource, index.getRoot());
 			}
-
 		}
 
 		return result;
 	}
-	
+
+	/**
+	 * Returns the paths of the resources below the root whose path matches the regular expression. Without a file
+	 * system, the resources are searched in the cached index of the jar or directory where the class is defined, and
+	 * their paths belong to the zip file system of the jar, or to the default one for a directory.
+	 */
 	public static List<Path> searchPath(Class fromClass, FileSystem fs, String root, String resource) {
 
 		if (root == null) {
@@ -121,27 +75,23 @@ public class ResUtils {
 		FileSystem myFS = null;
 
 		//
-		// If not file system is provided to search the resource in, then try to create one by
-		// looking into the Jar file of the app (where this class is defined)
+		// If not file system is provided to search the resource in, then look into the index of the Jar file of the
+		// app (where this class is defined), which is built only once.
 		//
 		if (fs == null) {
-			URL jar = fromClass.getProtectionDomain().getCodeSource().getLocation();
-
-			Path jarFile = null;
-			try {
-				jarFile = Paths.get(jar.toURI());
-
-				if (jarFile != null) {
-					logger.debug("Found Jar {}", jar.toURI());
-					myFS = FileSystems.newFileSystem(jarFile, fromClass.getClassLoader());
-				} else {
-					logger.debug("Unable to find Jar at {}", jar.toURI());
+			ResourceIndex index = ResourceIndex.of(fromClass);
+			if (index != null) {
+				try {
+					for (String name : index.find(root, resource)) {
+						if (fromClass.getResource(name) != null) {
+							result.add(index.getPath(name));
+						}
+					}
+				} catch (IOException e) {
+					logger.error("Unable to open the resources of {} : {}", index.getRoot(), e.getLocalizedMessage());
 				}
-
-			} catch (URISyntaxException | IOException e1) {
-				e1.printStackTrace();
+				return result;
 			}
-
 		} else {
 			myFS = fs;
 		}
@@ -171,20 +121,6 @@ public class ResUtils {
 				logger.error(" {}", e.getLocalizedMessage());
 				e.printStackTrace();
 			}
-			//
-			// If provided FileSystem is null and the one used for searching is not, then
-			// we can close the one we used because we just created it.
-			//
-
-			finally {
-				try {
-					if ((myFS != null) && (fs == null)) {
-						myFS.close();
-					}
-				} catch (IOException e) {
-
-				}
-			}
 		}
 		return result;
 	}
@@ -0,0 +1,344 @@
+package com.genielog.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An in-memory index of the resources of a jar file or of a classpath directory. <br>
+ * The index is built once per jar or directory and cached for the whole process, so searching resources with glob or
+ * regular expressions doesn't walk the jar or the directory again. The index of a directory is built again when the
+ * modification time of the directory or of one of its indexed sub-directories changes. Resource names are absolute,
+ * like "/checkers/a.json". <br>
+ * When the root contains an index file (see {@link #INDEX_FILE} and {@link #writeIndexFile}), the names are read from
+ * it instead of scanning the root, which is useful for large classpath directories.
+ */
+public class ResourceIndex implements AutoCloseable {
+
+	protected static Logger logger = LogManager.getLogger(ResourceIndex.class);
+
+	/** Name of the optional index file, listing one resource name per line. */
+	public static final String INDEX_FILE = "META-INF/resources.idx";
+
+	private static final Map<Path, ResourceIndex> sIndexes = new ConcurrentHashMap<>();
+
+	private final Path _root;
+	private final ZipFile _zip;
+	private final List<String> _names;
+
+	// Modification times of the directories of a directory index, or of its index file, when it was built.
+	private final Map<Path, FileTime> _times = new HashMap<>();
+
+	// Zip file system of the jar, opened on the first request of a resource path.
+	private FileSystem _fs = null;
+
+	private ResourceIndex(Path root) throws IOException {
+		_root = root;
+		_zip = Files.isDirectory(root) ? null : new ZipFile(root.toFile());
+		List<String> indexed = readIndexFile();
+		_names = Collections.unmodifiableList((indexed != null) ? indexed : scan());
+		if (_zip == null) {
+			if (indexed != null) {
+				_times.put(_root.resolve(INDEX_FILE), null);
+			} else {
+				_times.put(_root, null);
+				for (String name : _names) {
+					for (int i = name.indexOf('/', 1); i > 0; i = name.indexOf('/', i + 1)) {
+						_times.put(_root.resolve(name.substring(1, i)), null);
+					}
+				}
+			}
+			for (Path path : _times.keySet()) {
+				_times.put(path, Files.getLastModifiedTime(path));
+			}
+		}
+		logger.debug("Resource index of {} built with {} resources{}", root, _names.size(),
+				(indexed != null) ? " from its index file" : "");
+	}
+
+	/**
+	 * Returns the index of a jar file or classpath directory, built on its first use, and built again when the
+	 * directory changed.
+	 */
+	public static ResourceIndex of(Path root) {
+		if (root == null) {
+			throw new IllegalArgumentException("Undefined jar or directory to index.");
+		}
+		return sIndexes.compute(root.toAbsolutePath().normalize(), (path, index) -> {
+			if ((index != null) && index.isUpToDate()) {
+				return index;
+			}
+			try {
+				return new ResourceIndex(path);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Unable to index resources of " + path, e);
+			}
+		});
+	}
+
+	/** Returns false if one of the indexed directories, or the index file, was modified since the index was built. */
+	private boolean isUpToDate() {
+		try {
+			for (Map.Entry<Path, FileTime> time : _times.entrySet()) {
+				if (!time.getValue().equals(Files.getLastModifiedTime(time.getKey()))) {
+					logger.debug("Resource index of {} is stale, {} was modified.", _root, time.getKey());
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/** Returns the index of the jar or classpath directory where the class is defined, or null. */
+	public static ResourceIndex of(Class<?> fromClass) {
+		try {
+			URL location = fromClass.getProtectionDomain().getCodeSource().getLocation();
+			return of(Paths.get(location.toURI()));
+		} catch (URISyntaxException | RuntimeException e) {
+			logger.error("Unable to locate the resources of class {} : {}", fromClass.getName(),
+					Tools.getExceptionMessages(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the index of the jar or classpath directory providing the resource at the given absolute path, as found by
+	 * the class, or null if the resource doesn't exist.
+	 */
+	public static ResourceIndex forResource(Class<?> fromClass, String path) {
+		URL url = fromClass.getResource(path);
+		if (url == null) {
+			return null;
+		}
+		try {
+			if ("jar".equals(url.getProtocol())) {
+				URL jar = ((JarURLConnection) url.openConnection()).getJarFileURL();
+				return of(Paths.get(jar.toURI()));
+			}
+			Path root = Paths.get(url.toURI());
+			for (String segment : path.split("/")) {
+				if (!segment.isEmpty()) {
+					root = root.getParent();
+				}
+			}
+			return of(root);
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			logger.error("Unable to locate the resources providing {} : {}", path, Tools.getExceptionMessages(e));
+			return null;
+		}
+	}
+
+	public Path getRoot() {
+		return _root;
+	}
+
+	// ******************************************************************************************************************
+	// Indexing
+	// ******************************************************************************************************************
+
+	private List<String> scan() throws IOException {
+		List<String> result = new ArrayList<>();
+		if (_zip != null) {
+			Enumeration<? extends ZipEntry> entries = _zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (!entry.isDirectory()) {
+					result.add("/" + entry.getName());
+				}
+			}
+		} else {
+			try (Stream<Path> files = Files.walk(_root)) {
+				files.filter(Files::isRegularFile)
+						.map(file -> "/" + _root.relativize(file).toString().replace(File.separatorChar, '/'))
+						.forEach(result::add);
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private List<String> readIndexFile() throws IOException {
+		try (InputStream is = openEntry("/" + INDEX_FILE)) {
+			if (is == null) {
+				return null;
+			}
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+				return reader.lines().filter(line -> !line.isBlank()).sorted().collect(Collectors.toList());
+			}
+		}
+	}
+
+	/** Writes the index file of a jar or classpath directory, listing all its resources. */
+	public static void writeIndexFile(Path directory) throws IOException {
+		List<String> names = new ResourceIndex(directory).scan();
+		names.remove("/" + INDEX_FILE);
+		Path indexFile = directory.resolve(INDEX_FILE);
+		Files.createDirectories(indexFile.getParent());
+		Files.write(indexFile, names, StandardCharsets.UTF_8);
+	}
+
+	/** Generates the index file of the classpath directories given as arguments, at build time. */
+	public static void main(String[] args) throws IOException {
+		for (String directory : args) {
+			writeIndexFile(Paths.get(directory));
+		}
+	}
+
+	// ******************************************************************************************************************
+	// Queries
+	// ******************************************************************************************************************
+
+	/** Returns the names of all the resources, sorted. */
+	public List<String> list() {
+		return _names;
+	}
+
+	public boolean contains(String name) {
+		return Collections.binarySearch(_names, name) >= 0;
+	}
+
+	/** Returns the names of the resources matching a regular expression. */
+	public List<String> regex(String regex) {
+		Pattern pattern = Pattern.compile(regex);
+		return _names.stream().filter(name -> pattern.matcher(name).matches()).collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the names of the resources matching a glob pattern, where '*' and '?' don't cross directories and '**'
+	 * does, like "/checkers/**.json".
+	 */
+	public List<String> glob(String glob) {
+		return regex(globToRegex(glob));
+	}
+
+	/** Returns the names of the resources below a directory and matching a regular expression, like searchPath. */
+	public List<String> find(String root, String regex) {
+		String prefix = root.endsWith("/") ? root : root + "/";
+		Pattern pattern = Pattern.compile(regex);
+		return _names.stream()
+				.filter(name -> name.startsWith(prefix) && pattern.matcher(name).matches())
+				.collect(Collectors.toList());
+	}
+
+	static String globToRegex(String glob) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*') {
+				if ((i + 1 < glob.length()) && (glob.charAt(i + 1) == '*')) {
+					result.append(".*");
+					i++;
+				} else {
+					result.append("[^/]*");
+				}
+			} else if (c == '?') {
+				result.append("[^/]");
+			} else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+				result.append('\\').append(c);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/** Opens a resource of the index, or returns null if it doesn't exist. */
+	public InputStream open(String name) throws IOException {
+		return contains(name) ? openEntry(name) : null;
+	}
+
+	/**
+	 * Returns a stamp of the current state of a resource, without reading it: the CRC and the size of its jar entry, or
+	 * the time and the size of its file. Returns null if the resource doesn't exist.
+	 */
+	public String stamp(String name) throws IOException {
+		if (!contains(name)) {
+			return null;
+		}
+		String relative = name.startsWith("/") ? name.substring(1) : name;
+		if (_zip != null) {
+			ZipEntry entry = _zip.getEntry(relative);
+			if (entry == null) {
+				return null;
+			}
+			if ((entry.getCrc() < 0) || (entry.getSize() < 0)) {
+				// Unknown in the jar directory, the jar itself is stamped instead.
+				File jar = _root.toFile();
+				return jar.lastModified() + ":" + jar.length();
+			}
+			return Long.toHexString(entry.getCrc()) + ":" + entry.getSize();
+		}
+		Path file = _root.resolve(relative);
+		return Files.isRegularFile(file) ? Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file) : null;
+	}
+
+	/**
+	 * Returns the path of a resource: in the zip file system of the jar, which stays open until the index is closed, or
+	 * in the directory.
+	 */
+	public Path getPath(String name) throws IOException {
+		if (_zip == null) {
+			return _root.resolve(name.startsWith("/") ? name.substring(1) : name);
+		}
+		synchronized (this) {
+			if (_fs == null) {
+				_fs = FileSystems.newFileSystem(_root, (ClassLoader) null);
+			}
+		}
+		return _fs.getPath(name.startsWith("/") ? name : "/" + name);
+	}
+
+	private InputStream openEntry(String name) throws IOException {
+		String relative = name.startsWith("/") ? name.substring(1) : name;
+		if (_zip != null) {
+			ZipEntry entry = _zip.getEntry(relative);
+			return (entry == null) ? null : _zip.getInputStream(entry);
+		}
+		Path file = _root.resolve(relative);
+		return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+	}
+
+	/** Closes the jar of the index, with its file system, and removes it from the cache. */
+	@Override
+	public void close() throws IOException {
+		sIndexes.remove(_root, this);
+		if (_zip != null) {
+			_zip.close();
+		}
+		synchronized (this) {
+			if (_fs != null) {
+				_fs.close();
+				_fs = null;
+			}
+		}
+	}
+}
@@ -16,6 +16,9 @@ open module com.genielog.tools {
 	requires transitive commons.cli;
 	requires org.apache.commons.io;
 	requires com.google.common;
+	requires java.management;
+
+	uses com.genielog.auditor.AChecker;
 
 
 }
\ No newline at end of file
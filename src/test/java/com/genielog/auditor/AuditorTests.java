@@ -1,15 +1,42 @@
 package com.genielog.auditor;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.genielog.tools.BaseTest;
 
 class AuditorTests extends BaseTest {
@@ -96,4 +123,857 @@ class AuditorTests extends BaseTest {
 		assertEquals("Hello", defect.subject,"Defect's subject is not the right one ?");
 
 	}
+
+	/** Build a checker triggering a defect on the subjects multiple of the given modulo. */
+	static TestChecker makeModuloChecker(String name, int modulo, int nbSubjects) {
+		TestChecker checker = new TestChecker();
+		checker.setName(name);
+		checker.setDescription("Trigger a defect on multiple of " + modulo);
+		checker.setPredicate(subject -> ((Integer) subject) % modulo == 0);
+		checker.setSubjects(IntStream.range(0, nbSubjects).boxed().collect(Collectors.toList()));
+		return checker;
+	}
+
+	@Test
+	@Order(4)
+	@DisplayName("Concurrent audit of all enabled checkers")
+	void test_ConcurrentAudit() {
+
+		TestConfig config = new TestConfig();
+		config.addChecker(makeModuloChecker("MOD_2", 2, 1000));
+		config.addChecker(makeModuloChecker("MOD_5", 5, 1000));
+		config.addChecker(makeModuloChecker("MOD_10", 10, 1000));
+
+		// The sink is called from the auditing thread only
+		List<ADefect> defects = new ArrayList<>();
+		AuditReport report = config.audit(2, defects::add);
+
+		_logger.info("{}", report);
+
+		assertEquals(500 + 200 + 100, defects.size(), "Defects from some checkers are missing");
+		assertEquals(defects.size(), report.getNbDefects());
+		assertEquals(3000, report.getNbSubjects());
+		assertEquals(200, report.getChecker("MOD_5").getNbDefects());
+		assertEquals(1000, report.getChecker("MOD_5").getNbSubjects());
+		assertFalse(report.isFailed());
+	}
+
+	@Test
+	@Order(5)
+	@DisplayName("Parallel check of the subjects of a thread-safe checker")
+	void test_ParallelCheck() {
+
+		TestChecker checker = makeModuloChecker("MOD_3", 3, 30000);
+		checker.setThreadSafe(true);
+
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		checker.setPredicate(subject -> {
+			threads.add(Thread.currentThread().getName());
+			return ((Integer) subject) % 3 == 0;
+		});
+
+		long nbDefects;
+		try (Stream<TestDefect> defects = checker.check(true)) {
+			nbDefects = defects.count();
+		}
+
+		_logger.info("Checked by {} threads : {}", threads.size(), checker.getStats());
+
+		assertEquals(10000, nbDefects);
+		assertEquals(30000, checker._nbCheckedSubjects.get());
+		assertEquals(30000, checker.getStats().getNbChecks());
+		assertEquals(0, checker.getStats().getNbErrors());
+		@SuppressWarnings("deprecation")
+		long elapsed = checker._checksDuration.elapsed();
+		assertEquals(checker.getStats().getDuration(), elapsed, "Deprecated duration not backed by the statistics");
+
+		// A checker not declared thread-safe is always checked sequentially
+		checker.setThreadSafe(false);
+		threads.clear();
+		try (Stream<TestDefect> defects = checker.check(true)) {
+			nbDefects = defects.count();
+		}
+		assertEquals(10000, nbDefects);
+		assertEquals(30000, checker.getStats().getNbChecks());
+		assertEquals(1, threads.size());
+	}
+
+	@Test
+	@Order(6)
+	@DisplayName("Single scan of a subject source shared by several checkers")
+	void test_SharedSubjectSource() {
+
+		AtomicInteger nbScans = new AtomicInteger();
+		AtomicInteger nbSubjects = new AtomicInteger();
+
+		TestConfig config = new TestConfig();
+		config.registerSubjectSource("integers", () -> {
+			nbScans.incrementAndGet();
+			return IntStream.range(0, 1000).boxed().peek(i -> nbSubjects.incrementAndGet());
+		});
+
+		for (int modulo : new int[] { 2, 5, 10 }) {
+			TestChecker checker = makeModuloChecker("SHARED_MOD_" + modulo, modulo, 0);
+			checker.setSubjects(null);
+			checker.setSubjectSource("integers");
+			config.addChecker(checker);
+		}
+		// This one still enumerates its own subjects
+		config.addChecker(makeModuloChecker("OWN_MOD_10", 10, 1000));
+
+		List<ADefect> defects = new ArrayList<>();
+		AuditReport report = config.audit(2, defects::add);
+
+		_logger.info("{}", report);
+
+		assertEquals(1, nbScans.get(), "The shared source should be scanned once");
+		assertEquals(1000, nbSubjects.get());
+		assertEquals(500 + 200 + 100 + 100, defects.size());
+		assertEquals(1000, report.getChecker("SHARED_MOD_5").getNbSubjects());
+		assertEquals(200, report.getChecker("SHARED_MOD_5").getNbDefects());
+		assertFalse(report.isFailed());
+	}
+
+	@Test
+	@Order(7)
+	@DisplayName("Incremental audit replaying the defects of unchanged subjects")
+	void test_IncrementalAudit(@TempDir Path cacheDir) {
+
+		AtomicInteger nbChecks = new AtomicInteger();
+		TestChecker checker = makeModuloChecker("INCR_MOD_10", 10, 1000);
+		checker.setPredicate(subject -> {
+			nbChecks.incrementAndGet();
+			return ((Integer) subject) % 10 == 0;
+		});
+
+		// The first 100 subjects change between the audits
+		AtomicInteger version = new AtomicInteger(1);
+		checker.setFingerprint(subject -> ((Integer) subject < 100) ? "v" + version.get() : "v0");
+
+		TestConfig config = new TestConfig();
+		config.addChecker(checker);
+
+		List<ADefect> defects = new ArrayList<>();
+		config.getAuditEngine().setIncremental(cacheDir.toFile()).run(defects::add);
+		assertEquals(1000, nbChecks.get());
+		assertEquals(100, defects.size());
+
+		nbChecks.set(0);
+		defects.clear();
+		version.incrementAndGet();
+		config.getAuditEngine().setIncremental(cacheDir.toFile()).run(defects::add);
+		_logger.info("Second audit : {}", checker.getStats());
+		assertEquals(100, nbChecks.get(), "Only the changed subjects should be checked");
+		assertEquals(900, checker.getStats().getNbCached());
+		assertEquals(100, defects.size());
+		assertTrue(defects.stream().allMatch(d -> d.checker() == checker), "Replayed defects must be reattached");
+
+		// Changing the configuration of the checker invalidates its cache
+		nbChecks.set(0);
+		checker.setDescription("Another description");
+		config.getAuditEngine().setIncremental(cacheDir.toFile()).run(defects::add);
+		assertEquals(1000, nbChecks.get());
+		assertEquals(1, cacheDir.toFile().list().length, "The obsolete cache should be removed");
+
+		// Opening the cache of a checker keeps the caches of checkers with a name starting with its name.
+		TestChecker longer = makeModuloChecker("INCR_MOD_10-BIS", 10, 1000);
+		TestChecker unsafe = makeModuloChecker("INCR/MOD:10", 10, 1000);
+		DefectCache.open(cacheDir.toFile(), longer).save();
+		DefectCache.open(cacheDir.toFile(), unsafe).save();
+		DefectCache.open(cacheDir.toFile(), checker);
+		assertEquals(3, cacheDir.toFile().list().length, "Caches of other checkers removed");
+		assertEquals(cacheDir.toFile(), DefectCache.open(cacheDir.toFile(), unsafe).getFile().getParentFile());
+	}
+
+	@Test
+	@Order(8)
+	@DisplayName("Streaming defects to a gzipped JSON Lines file")
+	void test_DefectWriter(@TempDir Path dir) throws IOException {
+
+		TestConfig config = new TestConfig();
+		config.addChecker(makeModuloChecker("JSONL_MOD_2", 2, 20000));
+		config.addChecker(makeModuloChecker("JSONL_MOD_5", 5, 20000));
+
+		File file = dir.resolve("defects.jsonl.gz").toFile();
+		AuditReport report;
+		try (DefectWriter writer = config.openDefectWriter(file)) {
+			report = config.audit(2, writer);
+		}
+		assertEquals(14000, report.getNbDefects());
+
+		Map<String, Long> byChecker;
+		try (Stream<JsonNode> defects = DefectReader.read(file)) {
+			byChecker = defects.collect(Collectors.groupingBy(d -> d.get("checker_name").asText(), Collectors.counting()));
+		}
+		assertEquals(10000L, byChecker.get("JSONL_MOD_2"));
+		assertEquals(4000L, byChecker.get("JSONL_MOD_5"));
+
+		try (DefectReader reader = new DefectReader(file)) {
+			JsonNode first = reader.next();
+			_logger.info("First defect : {}", first);
+			assertTrue(first.has("checker_name") && first.has("subject"));
+		}
+
+		// Producers don't block on a full queue once the writer thread failed
+		TestChecker checker = makeModuloChecker("FAILING", 1, 0);
+		DefectWriter failing = new DefectWriter(dir.resolve("failing.jsonl").toFile(), 10, 1);
+		assertThrows(IllegalStateException.class, () -> {
+			failing.accept(new TestDefect(checker, 0) {
+				@Override
+				public void toJson(JsonGenerator gen) throws IOException {
+					throw new IOException("Disk full");
+				}
+			});
+			for (int i = 0; i < 1000; i++) {
+				failing.accept(new TestDefect(checker, i));
+			}
+		});
+		assertThrows(IOException.class, failing::close);
+	}
+
+	@Test
+	@Order(9)
+	@DisplayName("Deduplication and aggregation of defects in an index")
+	void test_DefectIndex(@TempDir Path dir) throws IOException {
+
+		TestConfig config = new TestConfig();
+		config.addChecker(makeModuloChecker("IDX_MOD_2", 2, 1000));
+		config.addChecker(makeModuloChecker("IDX_MOD_5", 5, 1000));
+
+		DefectIndex index = new DefectIndex();
+		config.audit(2, index);
+		_logger.info("First audit : {}", index);
+		assertEquals(500 + 200, index.size());
+		assertEquals(500, index.countByChecker("IDX_MOD_2"));
+		assertEquals(2, index.countBySubject("10"));
+		assertEquals(1, index.countBySubject("4"));
+		assertEquals(0, index.countBySubject("3"));
+		assertEquals(700, index.countBySignature("TestDefect"));
+		assertTrue(index.contains("IDX_MOD_5", "15", "TestDefect"));
+
+		// Repeating the audit doesn't add any defect
+		config.audit(2, index);
+		assertEquals(700, index.size());
+		assertEquals(700, index.getNbDuplicates());
+
+		// Nor indexing again the defects saved in a file
+		File file = dir.resolve("defects.jsonl").toFile();
+		try (DefectWriter writer = config.openDefectWriter(file)) {
+			config.audit(1, writer);
+		}
+		assertEquals(0, index.addAll(file));
+
+		AtomicInteger nbVisited = new AtomicInteger();
+		index.forEach((checker, subject, signature) -> nbVisited.incrementAndGet());
+		assertEquals(700, nbVisited.get());
+	}
+
+	@Test
+	@Order(10)
+	@DisplayName("Longest checkers first from the timing history")
+	void test_TimingHistory(@TempDir Path dir) {
+
+		TestConfig config = new TestConfig();
+		for (int nbSubjects : new int[] { 50, 10, 100 }) {
+			TestChecker checker = makeModuloChecker("TIMED_" + nbSubjects, 10, nbSubjects);
+			checker.setPredicate(subject -> {
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return false;
+			});
+			config.addChecker(checker);
+		}
+
+		File file = dir.resolve("timings.json").toFile();
+		config.getAuditEngine().setTimingHistory(new TimingHistory(file)).run(d -> {
+		});
+		assertTrue(file.isFile());
+
+		TimingHistory history = new TimingHistory(file);
+		assertEquals(1, history.get("TIMED_100").getNbRuns());
+		assertEquals(100, history.get("TIMED_100").getLastNbSubjects());
+
+		AuditEngine<TestChecker> engine = config.getAuditEngine().setTimingHistory(history).setNbThreads(2);
+		List<String> order = engine.plan(engine.getCheckers()).stream()
+				.map(group -> group.get(0).getName())
+				.collect(Collectors.toList());
+		assertEquals(List.of("TIMED_100", "TIMED_50", "TIMED_10"), order);
+
+		long estimate = engine.estimate();
+		_logger.info("Audit estimated to {} ms", estimate);
+		assertEquals(history.getExpectedDuration("TIMED_100"), estimate);
+
+		assertEquals(10, TimingHistory.makespan(List.of(5L, 4L, 3L, 3L, 3L), 2));
+
+		// The checkers of a shared scan are all timed over the whole scan, which is not the sum of their durations.
+		TestConfig shared = new TestConfig();
+		shared.registerSubjectSource("integers", () -> IntStream.range(0, 100).boxed());
+		for (String name : new String[] { "SCAN_A", "SCAN_B" }) {
+			TestChecker checker = makeModuloChecker(name, 10, 0);
+			checker.setSubjects(null);
+			checker.setSubjectSource("integers");
+			shared.addChecker(checker);
+			history.record(name, 1000, 100);
+		}
+		assertEquals(1000, shared.getAuditEngine().setTimingHistory(history).setNbThreads(1).estimate());
+
+		// An incremental audit replaying cached defects isn't timed
+		TestConfig incremental = new TestConfig();
+		TestChecker cached = makeModuloChecker("TIMED_CACHED", 10, 100);
+		cached.setFingerprint(subject -> "v0");
+		incremental.addChecker(cached);
+		File cacheDir = dir.resolve("cache").toFile();
+		for (int i = 0; i < 2; i++) {
+			incremental.getAuditEngine().setTimingHistory(history).setIncremental(cacheDir).run(d -> {
+			});
+		}
+		assertEquals(100, cached.getStats().getNbCached());
+		assertEquals(1, history.get("TIMED_CACHED").getNbRuns());
+	}
+
+	/** Write the JSON definitions of checkers in the even and odd sub-directories, returns their names. */
+	static List<String> writeCheckerDefinitions(Path dir, int nbCheckers) throws IOException {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < nbCheckers; i++) {
+			TestChecker checker = new TestChecker();
+			checker.setName(String.format("LOADED_%03d", i));
+			checker.setDescription("Checker loaded from the configuration directory");
+			checker.setModulo(7);
+			names.add(checker.getName());
+			File sub = dir.resolve((i % 2 == 0) ? "even" : "odd").toFile();
+			sub.mkdirs();
+			AConfig.getObjectMapper().writeValue(new File(sub, checker.getName() + ".json"), checker.saveAsJson());
+		}
+		return names;
+	}
+
+	@Test
+	@Order(11)
+	@DisplayName("Parallel loading of the checker definitions")
+	void test_ParallelInit(@TempDir Path dir) throws IOException {
+
+		List<String> names = writeCheckerDefinitions(dir, 200);
+
+		List<String> hooked = new ArrayList<>();
+		Set<Thread> hookThreads = new HashSet<>();
+		TestConfig config = new TestConfig() {
+			@Override
+			protected void checkerLoaded(TestChecker checker) {
+				hooked.add(checker.getName());
+				hookThreads.add(Thread.currentThread());
+			}
+		};
+		config.setConfigDir(dir.toString());
+		config.setLoadingThreads(4);
+
+		// There is no embedded checker definition in the tests, so init() reports a failure.
+		config.init();
+
+		List<String> loaded = config.getDisabledCheckers().map(AChecker::getName).collect(Collectors.toList());
+		assertEquals(200, loaded.size());
+
+		// Ordered by path, whatever the order of completion of the workers
+		List<String> expected = names.stream()
+				.sorted(Comparator.comparing((String name) -> Integer.parseInt(name.substring(7)) % 2)
+						.thenComparing(Comparator.naturalOrder()))
+				.collect(Collectors.toList());
+		assertEquals(expected, loaded);
+
+		// The post-load hook runs on the thread of init(), in the same order
+		assertEquals(expected, hooked);
+		assertEquals(Set.of(Thread.currentThread()), hookThreads);
+	}
+
+	@Test
+	@Order(12)
+	@DisplayName("Cached resolution of the checker classes")
+	void test_CheckerRegistry() {
+
+		CheckerRegistry registry = new CheckerRegistry(getClass().getClassLoader());
+		List<String> packages = List.of("com.genielog.unknown", "com.genielog.auditor");
+
+		Class<? extends AChecker> checkerClass = registry.resolve("TestChecker", packages);
+		assertEquals(TestChecker.class, checkerClass);
+		assertEquals(TestChecker.class, registry.resolve("TestChecker", packages));
+		assertEquals(TestChecker.class, registry.resolve("com.genielog.auditor.TestChecker", null));
+
+		// Not a checker, or not found
+		assertNull(registry.resolve("TestConfig", packages));
+		assertNull(registry.resolve("NoSuchChecker", packages));
+
+		AChecker checker = registry.newInstance(checkerClass);
+		assertTrue(checker instanceof TestChecker);
+		assertNotSame(checker, registry.newInstance(checkerClass));
+
+		// Registered classes are resolved without any package
+		registry.register(TestChecker.class);
+		assertEquals(TestChecker.class, registry.resolve("TestChecker", null));
+
+		// A checker class which is not public is created as well
+		assertTrue(registry.newInstance(HiddenChecker.class) instanceof HiddenChecker);
+	}
+
+	static class HiddenChecker extends TestChecker {
+		public HiddenChecker() {
+		}
+	}
+
+	@Test
+	@Order(13)
+	@DisplayName("Loading the checkers from a compiled bundle")
+	void test_CheckerBundle(@TempDir Path dir) throws IOException {
+
+		Path configDir = dir.resolve("config");
+		writeCheckerDefinitions(configDir, 50);
+		File bundle = dir.resolve("checkers.bundle").toFile();
+
+		TestConfig config = new TestConfig();
+		config.setConfigDir(configDir.toString());
+		config.compileCheckerBundle(bundle);
+		assertTrue(bundle.isFile());
+		List<String> expected = config.getDisabledCheckers().map(AChecker::getName).collect(Collectors.toList());
+		assertEquals(50, expected.size());
+
+		// An up to date bundle is used as is
+		assertTrue(bundle.setLastModified(bundle.lastModified() - 10000));
+		long compiled = bundle.lastModified();
+		TestConfig fromBundle = new TestConfig();
+		fromBundle.setConfigDir(configDir.toString());
+		fromBundle.setCheckerBundle(bundle);
+		fromBundle.init();
+		assertEquals(compiled, bundle.lastModified(), "The bundle should not be compiled again");
+		assertEquals(expected, fromBundle.getDisabledCheckers().map(AChecker::getName).collect(Collectors.toList()));
+		TestChecker checker = fromBundle.getChecker("LOADED_007");
+		assertEquals("Checker loaded from the configuration directory", checker.getDescription());
+		assertTrue(checker.isValid());
+
+		// Changing a definition makes the bundle stale
+		File changed = configDir.resolve("odd").resolve("LOADED_007.json").toFile();
+		TestChecker definition = new TestChecker();
+		definition.setName("LOADED_007");
+		definition.setDescription("Changed description");
+		definition.setModulo(3);
+		AConfig.getObjectMapper().writeValue(changed, definition.saveAsJson());
+		assertTrue(changed.setLastModified(System.currentTimeMillis() + 2000));
+
+		TestConfig afterChange = new TestConfig();
+		afterChange.setConfigDir(configDir.toString());
+		afterChange.setCheckerBundle(bundle);
+		afterChange.init();
+		assertNotEquals(compiled, bundle.lastModified(), "A stale bundle should be compiled again");
+		assertEquals("Changed description", afterChange.getChecker("LOADED_007").getDescription());
+		assertFalse(dir.resolve("checkers.bundle.tmp").toFile().exists());
+
+		// Big numbers and binary values are decoded without any loss
+		ObjectNode values = JsonNodeFactory.instance.objectNode();
+		values.put("big-integer", new BigInteger("123456789012345678901234567890"));
+		values.put("big-decimal", new BigDecimal("3.14159265358979323846264338327950"));
+		values.put("binary", new byte[] { 0, 1, 2, (byte) 255 });
+		File other = dir.resolve("values.bundle").toFile();
+		CheckerBundle.write(other, List.of(), List.of(),
+				List.of(new CheckerBundle.Entry("values", TestChecker.class.getName(), values)));
+		assertEquals(values, CheckerBundle.read(other).getEntries().get(0).definition);
+	}
+
+	@Test
+	@Order(14)
+	@DisplayName("Checking the subjects by batches")
+	void test_BatchCheck() {
+
+		// Fixed size batches, the last one being smaller
+		TestChecker checker = makeModuloChecker("MOD_7", 7, 1000);
+		checker.setBatchSize(64);
+		assertTrue(checker.isBatched());
+		try (Stream<TestDefect> defects = checker.check()) {
+			assertEquals(143, defects.count());
+		}
+		assertEquals(16, checker.getBatchSizes().size());
+		assertEquals(1000, checker.getBatchSizes().stream().mapToInt(Integer::intValue).sum());
+		assertEquals(1000, checker.getStats().getNbChecks());
+		assertEquals(64, (int) checker.getBatchSizes().get(0));
+
+		// Checkers with one subject at a time don't use batches
+		TestChecker single = makeModuloChecker("MOD_3", 3, 1000);
+		try (Stream<TestDefect> defects = single.check()) {
+			assertEquals(334, defects.count());
+		}
+		assertTrue(single.getBatchSizes().isEmpty());
+
+		// Adaptive batches
+		TestChecker adaptive = makeModuloChecker("MOD_11", 11, 20000);
+		adaptive.setBatchSize(8);
+		adaptive.setBatchTarget(5);
+		try (Stream<TestDefect> defects = adaptive.check()) {
+			assertEquals(1819, defects.count());
+		}
+		assertEquals(20000, adaptive.getBatchSizes().stream().mapToInt(Integer::intValue).sum());
+		assertTrue(adaptive.getBatchSizes().stream().anyMatch(size -> size > 8), "The batches should grow");
+
+		// Adaptive batches in parallel, each one sized when a thread is ready to check it
+		TestChecker adaptiveParallel = makeModuloChecker("MOD_11_PARALLEL", 11, 20000);
+		adaptiveParallel.setThreadSafe(true);
+		adaptiveParallel.setBatchSize(8);
+		adaptiveParallel.setBatchTarget(20);
+		try (Stream<TestDefect> defects = adaptiveParallel.check(true)) {
+			assertEquals(1819, defects.count());
+		}
+		assertEquals(20000, adaptiveParallel.getBatchSizes().stream().mapToInt(Integer::intValue).sum());
+		assertTrue(adaptiveParallel.getBatchSizes().size() < 512,
+				"The batches should grow, not be split ahead : " + adaptiveParallel.getBatchSizes().size());
+
+		// Batches checked in parallel
+		TestChecker parallel = makeModuloChecker("MOD_13", 13, 1000);
+		parallel.setThreadSafe(true);
+		parallel.setBatchSize(10);
+		try (Stream<TestDefect> defects = parallel.check(true)) {
+			assertEquals(77, defects.count());
+		}
+		assertEquals(100, parallel.getBatchSizes().size());
+
+		assertThrows(IllegalArgumentException.class, () -> checker.setBatchSize(0));
+	}
+
+	/** A predicate spinning on some subjects until it is interrupted. */
+	static Predicate<Object> slowOn(int modulo) {
+		return subject -> {
+			if (((Integer) subject) % modulo == 0) {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return false;
+		};
+	}
+
+	@Test
+	@Order(15)
+	@DisplayName("Timeout of the check of a subject")
+	void test_SubjectTimeout() {
+
+		// A single slow subject is abandoned, the others are checked
+		TestChecker checker = makeModuloChecker("SLOW_ONE", 1, 100);
+		checker.setPredicate(slowOn(1000).or(subject -> ((Integer) subject) % 10 == 1));
+		checker.load(AConfig.getObjectMapper().createObjectNode().put("subject-timeout-ms", 50));
+		assertEquals(50, checker.getSubjectTimeout());
+		try (Stream<TestDefect> defects = checker.check()) {
+			assertEquals(10, defects.count());
+		}
+		assertEquals(1, checker.getStats().getNbTimeouts());
+		assertEquals(100, checker.getStats().getNbChecks());
+		assertFalse(checker.isTripped());
+
+		// Repeated timeouts disable the checker for the rest of the audit
+		TestConfig config = new TestConfig();
+		TestChecker slow = makeModuloChecker("SLOW_MANY", 1, 1000);
+		slow.setPredicate(slowOn(10));
+		slow.setSubjectTimeout(20);
+		slow.setMaxTimeouts(3);
+		config.addChecker(slow);
+		config.addChecker(makeModuloChecker("MOD_10", 10, 1000));
+
+		AuditReport report = config.audit(2, defect -> {
+		});
+		AuditReport.CheckerReport slowReport = report.getChecker("SLOW_MANY");
+		assertTrue(slow.isTripped());
+		assertTrue(slowReport.isDisabled());
+		assertEquals(3, slowReport.getNbTimeouts());
+		assertTrue(slowReport.getNbSubjects() < 1000);
+		assertEquals(100, report.getChecker("MOD_10").getNbDefects());
+		assertFalse(report.getChecker("MOD_10").isDisabled());
+
+		// The checks stop as well when the subjects are checked in parallel
+		TestChecker parallel = makeModuloChecker("SLOW_PARALLEL", 1, 1000);
+		parallel.setThreadSafe(true);
+		parallel.setPredicate(slowOn(10));
+		parallel.setSubjectTimeout(20);
+		parallel.setMaxTimeouts(3);
+		try (Stream<TestDefect> defects = parallel.check(true)) {
+			assertEquals(0, defects.count());
+		}
+		assertTrue(parallel.isTripped());
+		assertTrue(parallel.getStats().getNbChecks() < 1000, "Checks not stopped : " + parallel.getStats());
+
+		// A timed out batch counts as a timeout, then its subjects are checked one by one
+		TestChecker batched = makeModuloChecker("SLOW_BATCH", 1, 100);
+		batched.setPredicate(slowOn(1000));
+		batched.setBatchSize(10);
+		batched.setSubjectTimeout(20);
+		try (Stream<TestDefect> defects = batched.check()) {
+			assertEquals(0, defects.count());
+		}
+		assertEquals(2, batched.getStats().getNbTimeouts());
+		assertEquals(100, batched.getStats().getNbChecks());
+		assertFalse(batched.isTripped());
+
+		// A checker which isn't thread-safe is disabled while a check ignoring its interruption is still running
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		TestChecker stuck = makeModuloChecker("STUCK", 1, 100);
+		stuck.setPredicate(subject -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Integer::max);
+			if ((Integer) subject == 5) {
+				long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+				while (System.nanoTime() < end) {
+					Thread.onSpinWait();
+				}
+			}
+			running.decrementAndGet();
+			return false;
+		});
+		stuck.setSubjectTimeout(20);
+		stuck.setMaxTimeouts(0);
+		try (Stream<TestDefect> defects = stuck.check()) {
+			assertEquals(0, defects.count());
+		}
+		assertTrue(stuck.isTripped());
+		assertEquals(1, stuck.getStats().getNbTimeouts());
+		assertEquals(1, maxRunning.get(), "Concurrent checks of a checker not thread-safe");
+		assertEquals(1, stuck.getNbAbandoned());
+		try (Stream<TestDefect> defects = stuck.check()) {
+			assertEquals(0, defects.count());
+		}
+		assertTrue(stuck.isTripped(), "Checked again while its abandoned check is running");
+		assertEquals(1, maxRunning.get());
+	}
+
+	/** A checker whose subjects are the subjects of the defects of a producer. */
+	static TestChecker makeConsumerChecker(String name, String producer, int modulo) {
+		TestChecker result = new TestChecker();
+		result.setProducer(producer);
+		result.setName(name);
+		result.setDescription("Trigger a defect on defects of " + producer + " multiple of " + modulo);
+		result.setModulo(modulo);
+		result.load(AConfig.getObjectMapper().createObjectNode().set("depends-on",
+				AConfig.getObjectMapper().createArrayNode().add(producer)));
+		return result;
+	}
+
+	@Test
+	@Order(16)
+	@DisplayName("Checkers consuming the defects of other checkers")
+	void test_CheckerDependencies() {
+
+		for (int nbThreads : new int[] { 1, 4 }) {
+			TestConfig config = new TestConfig();
+			config.addChecker(makeConsumerChecker("DUPLICATES", "PARSE", 4));
+			config.addChecker(makeConsumerChecker("CLONES", "DUPLICATES", 8));
+			config.addChecker(makeModuloChecker("PARSE", 2, 1000));
+			config.addChecker(makeModuloChecker("MOD_5", 5, 1000));
+
+			CheckerGraph<TestChecker> graph = config.getCheckerGraph();
+			assertEquals(List.of("PARSE"), config.getChecker("DUPLICATES").getDependencies());
+			assertEquals(2, graph.getLevel(config.getChecker("CLONES")));
+			assertEquals(List.of("PARSE", "MOD_5", "DUPLICATES", "CLONES"),
+					graph.sort().stream().map(AChecker::getName).collect(Collectors.toList()));
+
+			AuditReport report = config.audit(nbThreads, defect -> {
+			});
+			assertEquals(500, report.getChecker("PARSE").getNbDefects());
+			assertEquals(250, report.getChecker("DUPLICATES").getNbDefects());
+			assertEquals(125, report.getChecker("CLONES").getNbDefects());
+			assertEquals(200, report.getChecker("MOD_5").getNbDefects());
+		}
+
+		// A consumer of a checker not in the audit fails
+		TestConfig missing = new TestConfig();
+		missing.addChecker(makeConsumerChecker("ORPHAN", "NONE", 2));
+		assertTrue(missing.audit(2, defect -> {
+		}).getChecker("ORPHAN").isFailed());
+
+		// Cycles are rejected
+		TestConfig cycle = new TestConfig();
+		cycle.addChecker(makeConsumerChecker("A", "B", 2));
+		cycle.addChecker(makeConsumerChecker("B", "A", 2));
+		assertThrows(IllegalStateException.class, () -> cycle.getCheckerGraph());
+	}
+
+	@Test
+	@Order(17)
+	@DisplayName("Audit of a sample of the subjects")
+	void test_SampledAudit() {
+
+		// Bernoulli sample, the same with the same seed
+		TestChecker checker = makeModuloChecker("MOD_10", 10, 100000);
+		checker.setSamplingPlan(SamplingPlan.ofRate(0.05).withSeed(42));
+		long nbDefects;
+		try (Stream<TestDefect> defects = checker.check()) {
+			nbDefects = defects.count();
+		}
+		SampleEstimate estimate = checker.getSampleEstimate();
+		assertEquals(100000, estimate.getPopulation());
+		assertEquals(nbDefects, estimate.getNbDefects());
+		assertTrue(Math.abs(estimate.getSampleSize() - 5000) < 500, "Unexpected sample size " + estimate);
+		assertTrue(estimate.getLowerBound() <= 10000 && 10000 <= estimate.getUpperBound(), estimate.toString());
+		try (Stream<TestDefect> defects = checker.check()) {
+			assertEquals(nbDefects, defects.count());
+		}
+
+		// Reservoir sample, stratified
+		checker.setSamplingPlan(SamplingPlan.ofSize(500).stratifiedBy(subject -> ((Integer) subject) % 3).withSeed(7));
+		try (Stream<TestDefect> defects = checker.check()) {
+			defects.count();
+		}
+		estimate = checker.getSampleEstimate();
+		assertEquals(1500, estimate.getSampleSize());
+		assertEquals(1500, checker.getStats().getNbChecks());
+		assertTrue(estimate.getLowerBound() <= 10000 && 10000 <= estimate.getUpperBound(), estimate.toString());
+
+		// Sampled audit, with a shared subject source
+		TestConfig config = new TestConfig();
+		config.registerSubjectSource("numbers", () -> IntStream.range(0, 100000).boxed());
+		TestChecker shared = makeModuloChecker("SHARED_MOD_4", 4, 0);
+		shared.setSubjectSource("numbers");
+		config.addChecker(shared);
+		config.addChecker(makeModuloChecker("MOD_5", 5, 100000));
+
+		AuditReport report = config.audit(2, SamplingPlan.ofSize(4000).withSeed(3), defect -> {
+		});
+		assertTrue(report.isSampled());
+		for (AuditReport.CheckerReport checkerReport : report.getCheckers()) {
+			SampleEstimate checkerEstimate = checkerReport.getSampleEstimate();
+			assertEquals(4000, checkerEstimate.getSampleSize());
+			assertEquals(checkerReport.getNbDefects(), checkerEstimate.getNbDefects());
+		}
+		SampleEstimate mod4 = report.getChecker("SHARED_MOD_4").getSampleEstimate();
+		assertTrue(mod4.getLowerBound() <= 25000 && 25000 <= mod4.getUpperBound(), mod4.toString());
+		assertTrue(Math.abs(report.getEstimatedDefects() - 45000) < 3000, report.toString());
+		assertNull(config.getChecker("MOD_5").getSamplingPlan());
+	}
+
+	@Test
+	@Order(18)
+	@DisplayName("A sampled audit keeps the defect caches and the timing history")
+	void test_SampledIncrementalAudit(@TempDir Path dir) {
+
+		TestConfig config = new TestConfig();
+		TestChecker checker = makeModuloChecker("SAMPLED_CACHED", 10, 1000);
+		checker.setFingerprint(subject -> "v0");
+		config.addChecker(checker);
+		File cacheDir = dir.resolve("cache").toFile();
+		TimingHistory history = new TimingHistory(dir.resolve("timings.json").toFile());
+
+		config.getAuditEngine().setTimingHistory(history).setIncremental(cacheDir).run(d -> {
+		});
+		config.getAuditEngine().setTimingHistory(history).setIncremental(cacheDir)
+				.setSampling(SamplingPlan.ofSize(50).withSeed(1)).run(d -> {
+				});
+		assertEquals(50, checker.getStats().getNbChecks());
+		assertEquals(1, history.get("SAMPLED_CACHED").getNbRuns());
+		assertEquals(1000, history.get("SAMPLED_CACHED").getLastNbSubjects());
+
+		// All the subjects are still cached after the sample
+		config.getAuditEngine().setTimingHistory(history).setIncremental(cacheDir).run(d -> {
+		});
+		assertEquals(1000, checker.getStats().getNbCached());
+	}
+
+	/** Audit the checkers into a defect file. */
+	static File writeDefects(File file, TestChecker... checkers) throws IOException {
+		TestConfig config = new TestConfig();
+		for (TestChecker checker : checkers) {
+			config.addChecker(checker);
+		}
+		try (DefectWriter writer = config.openDefectWriter(file)) {
+			config.audit(2, writer);
+		}
+		return file;
+	}
+
+	@Test
+	@Order(19)
+	@DisplayName("Diff of the defects of two audits")
+	void test_DefectDiff(@TempDir Path dir) throws IOException {
+
+		File previous = writeDefects(dir.resolve("previous.jsonl").toFile(),
+				makeModuloChecker("MOD_2", 2, 1000), makeModuloChecker("MOD_3", 3, 1000));
+
+		TestChecker shifted = makeModuloChecker("MOD_3", 3, 0);
+		shifted.setSubjects(IntStream.range(500, 1500).boxed().collect(Collectors.toList()));
+		File current = writeDefects(dir.resolve("current.jsonl.gz").toFile(),
+				makeModuloChecker("MOD_2", 2, 1000), shifted, makeModuloChecker("MOD_7", 7, 1000));
+
+		try (Stream<JsonNode> defects = DefectReader.read(current)) {
+			JsonNode first = defects.findFirst().get();
+			assertEquals(ADefect.fingerprint(first.get("checker_name").asText(), first.get("subject").asText(),
+					first.get("signature").asText()), first.get("fingerprint").asText());
+		}
+
+		// Beyond 64 partitions, the defects are partitioned in several passes
+		for (int nbPartitions : new int[] { 0, 1, 8, 100 }) {
+			Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+			DefectDiff diff = new DefectDiff(previous, current).setNbPartitions(nbPartitions).setTempDir(dir.toFile());
+			diff.run(new DefectDiff.DiffVisitor() {
+
+				@Override
+				public void onNew(JsonNode defect) {
+					counts.computeIfAbsent("new " + defect.get("checker_name").asText(), k -> new AtomicInteger())
+							.incrementAndGet();
+				}
+
+				@Override
+				public void onFixed(JsonNode defect) {
+					counts.computeIfAbsent("fixed " + defect.get("checker_name").asText(), k -> new AtomicInteger())
+							.incrementAndGet();
+				}
+			});
+
+			assertEquals(309, diff.getNbNew());
+			assertEquals(167, diff.getNbFixed());
+			assertEquals(667, diff.getNbUnchanged());
+			assertEquals(143, counts.get("new MOD_7").get());
+			assertEquals(166, counts.get("new MOD_3").get());
+			assertEquals(167, counts.get("fixed MOD_3").get());
+			assertNull(counts.get("new MOD_2"));
+		}
+		assertEquals(2, dir.toFile().list().length, "The partitions should be deleted");
+	}
+
+	@Test
+	@Order(20)
+	@DisplayName("Profiling of the checks of an audit")
+	void test_AuditProfile(@TempDir Path dir) throws IOException {
+
+		TestConfig config = new TestConfig();
+		TestChecker slow = makeModuloChecker("SLOW", 2, 1000);
+		slow.setPredicate(subject -> {
+			int value = (Integer) subject;
+			if (value == 50) {
+				throw new IllegalStateException("Failing on " + value);
+			}
+			if ((value == 100) || (value == 200) || (value == 300)) {
+				try {
+					Thread.sleep(value);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return value % 2 == 0;
+		});
+		config.addChecker(slow);
+		config.addChecker(makeModuloChecker("MOD_5", 5, 1000));
+
+		File file = dir.resolve("profile.json").toFile();
+		AuditReport report = config.getAuditEngine().setNbThreads(2).setProfiling(3, 1).setProfileFile(file)
+				.run(defect -> {
+				});
+
+		CheckerProfile profile = report.getChecker("SLOW").getProfile();
+		assertEquals(1000, profile.getLatencies().getCount());
+		assertEquals(Map.of("IllegalStateException", 1L), profile.getExceptions());
+		assertEquals(List.of("300", "200", "100"),
+				profile.getSlowest().stream().map(subject -> subject.subject).collect(Collectors.toList()));
+		assertTrue(report.getProfileText().contains("SLOW"));
+		assertNull(slow.getProfile(), "The checkers should not be profiled after the audit");
+
+		JsonNode json = AConfig.getObjectMapper().readTree(file);
+		assertEquals("SLOW", json.get("checkers").get(0).get("checker-name").asText());
+		assertEquals(3, json.get("checkers").get(0).get("slowest").size());
+		assertEquals(1, json.get("checkers").get(0).get("exceptions").get("IllegalStateException").asInt());
+		assertEquals(2, json.get("checkers").size());
+	}
 }
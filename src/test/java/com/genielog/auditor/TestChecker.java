@@ -1,12 +1,27 @@
 package com.genielog.auditor;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public class TestChecker extends AChecker<Object,TestDefect> {
 
 	private static final long serialVersionUID = 4392800091874741761L;
 	private transient Predicate<Object> _predicate;
+	private transient List<?> _subjects;
+	private transient boolean _threadSafe = false;
+	private transient String _subjectSource;
+	private transient Function<Object, String> _fingerprint;
+	private transient String _producer;
+	private transient List<Integer> _batchSizes = new CopyOnWriteArrayList<>();
+
+	// Alternative to the predicate, when the checker is loaded from JSON
+	@JsonProperty("modulo")
+	private int _modulo = 0;
 	
 	private String aParam1;
 	public String aParam2;
@@ -22,6 +37,46 @@ public class TestChecker extends AChecker<Object,TestDefect> {
 		return _predicate;
 	}
 	
+	public void setModulo(int modulo) {
+		_modulo = modulo;
+	}
+
+	public void setSubjects(List<?> subjects) {
+		_subjects = subjects;
+	}
+
+	/** Check the subjects of the defects of the given producer instead of the subjects. */
+	public void setProducer(String producer) {
+		_producer = producer;
+	}
+
+	public void setThreadSafe(boolean threadSafe) {
+		_threadSafe = threadSafe;
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return _threadSafe;
+	}
+
+	public void setSubjectSource(String source) {
+		_subjectSource = source;
+	}
+
+	@Override
+	public String getSubjectSource() {
+		return _subjectSource;
+	}
+
+	public void setFingerprint(Function<Object, String> fingerprint) {
+		_fingerprint = fingerprint;
+	}
+
+	@Override
+	public String getSubjectFingerprint(Object subject) {
+		return (_fingerprint == null) ? super.getSubjectFingerprint(subject) : _fingerprint.apply(subject);
+	}
+
 	@Override
 	public boolean isValidSubject(Object subject) {
 		return true;
@@ -29,13 +84,24 @@ public class TestChecker extends AChecker<Object,TestDefect> {
 	
 	@Override
 	protected TestDefect doCheck(Object subject) {
-		_logger.info("Checker {} is testing subject '{}'",getName(),subject);
-		return (_predicate.test(subject)) ? new TestDefect(this,subject) : null;
+		_logger.debug("Checker {} is testing subject '{}'",getName(),subject);
+		boolean triggered = (_predicate != null) ? _predicate.test(subject) : ((Integer) subject) % _modulo == 0;
+		return (triggered) ? new TestDefect(this,subject) : null;
+	}
+
+	@Override
+	protected List<TestDefect> doCheckBatch(List<Object> subjects) {
+		_batchSizes.add(subjects.size());
+		return super.doCheckBatch(subjects);
+	}
+
+	public List<Integer> getBatchSizes() {
+		return _batchSizes;
 	}
 
 	@Override
 	public boolean isValid() {
-		return super.isValid() && _predicate != null;
+		return super.isValid() && ((_predicate != null) || (_modulo > 0));
 	}
 
 	@Override
@@ -50,8 +116,10 @@ public class TestChecker extends AChecker<Object,TestDefect> {
 
 	@Override
 	public Stream<Object> getSubjects() {
-		// TODO Auto-generated method stub
-		return null;
+		if (_producer != null) {
+			return getUpstream(_producer).map(defect -> ((TestDefect) defect).subject());
+		}
+		return (_subjects == null) ? null : _subjects.stream().map(Object.class::cast);
 	}
 
 }
@@ -0,0 +1,20 @@
+package com.genielog.auditor;
+
+public class TestConfig extends AConfig<TestChecker> {
+
+	public TestConfig() {
+		setName("Test Configuration");
+	}
+
+	/** Register a new checker, enabled. */
+	public TestChecker addChecker(TestChecker checker) {
+		_disabledCheckers.add(checker);
+		return enableChecker(checker.getName());
+	}
+
+	@Override
+	public String getStandardBanner() {
+		return "Test Configuration";
+	}
+
+}
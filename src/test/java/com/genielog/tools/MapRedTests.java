@@ -1,13 +1,35 @@
 package com.genielog.tools;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.jupiter.api.Test;
 
@@ -155,4 +177,350 @@ class MapRedTests extends BaseTest {
 
 
 	}
+
+	@Test
+	void testRateLimited() {
+		int size = 60;
+		double rate = 100.0;
+
+		Concurrency executor = new Concurrency("testRateLimited", 4);
+		MapRedOperator<Integer, Long> operator = new MapRedOperator<>(intSumOperator)
+				.setRateLimiter(RateLimiter.itemsPerSecond(rate).withMaxConcurrency(2));
+
+		long chrono = System.currentTimeMillis();
+		long result = executor.parallel(makeSequence(size).stream(), 5, operator);
+		chrono = System.currentTimeMillis() - chrono;
+
+		assertEquals((long) size * (size + 1) / 2, result, "Rate limited test failed for size " + size);
+
+		// The first permit is granted immediately, the others are spread over the rate.
+		long expected = (long) (1000 * (size - 1) / rate);
+		assertTrue(chrono >= expected, "Rate limit not honored, executed in " + chrono + " msec");
+		_logger.info("Rate limited execution of {} items at {} items/sec in {} msec", size, rate, chrono);
+	}
+
+	@Test
+	void testOrdered() {
+		int size = 2000;
+		List<Integer> list = makeSequence(size);
+
+		// Chunks complete in a random order, because of the random processing time.
+		MapRedOperator<Integer, List<Integer>> operator = MapRedOperator.maper("ordered", null, (Integer x) -> {
+			if (x % 100 == 0) {
+				try {
+					Thread.sleep((long) (Math.random() * 20));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return x;
+		});
+
+		Concurrency executor = new Concurrency("testOrdered", 4);
+		List<Integer> streamed = new ArrayList<>();
+		List<Integer> result = executor.parallelOrdered(list.stream(), 100, operator, streamed::addAll);
+
+		assertEquals(list, result, "Ordered result not in encounter order");
+		assertEquals(list, streamed, "Chunk results not streamed in encounter order");
+
+		executor.setOrdered(true);
+		assertEquals(list, executor.parallel(list.stream(), 100, operator), "Ordered mode not in encounter order");
+	}
+
+	@Test
+	void testOrderedBoundedBuffer() {
+		int size = 2000;
+		List<Integer> list = makeSequence(size);
+
+		// The first chunk is much slower than all the others.
+		MapRedOperator<Integer, List<Integer>> operator = MapRedOperator.maper("slowFirst", null, (Integer x) -> {
+			if (x == 1) {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return x;
+		});
+
+		Concurrency executor = new Concurrency("testOrderedBoundedBuffer", 4);
+		executor.setMaxPendingChunks(8);
+		assertEquals(list, executor.parallelOrdered(list.stream(), 10, operator, null));
+		assertTrue(executor.getMaxReorderedChunks() <= 8,
+				"Reorder buffer grew to " + executor.getMaxReorderedChunks() + " chunks");
+	}
+
+	@Test
+	void testPublisher() throws Exception {
+		int size = 10000;
+
+		Concurrency executor = new Concurrency("testPublisher", 4);
+		AtomicLong sum = new AtomicLong();
+		AtomicInteger nbWindows = new AtomicInteger();
+
+		try (SubmissionPublisher<Integer> source = new SubmissionPublisher<>()) {
+			Flow.Publisher<Long> results = executor.subscribe(source, 100, 10, intSumOperator);
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			results.subscribe(new Flow.Subscriber<Long>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(Long item) {
+					sum.addAndGet(item);
+					nbWindows.incrementAndGet();
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					done.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					done.complete(null);
+				}
+			});
+
+			makeSequence(size).forEach(source::submit);
+			source.close();
+			done.get(1, TimeUnit.MINUTES);
+		}
+
+		assertEquals((long) size * (size + 1) / 2, sum.get(), "Published results don't sum up");
+		assertEquals(size / 1000, nbWindows.get(), "Unexpected number of published windows");
+	}
+
+	@Test
+	void testPublisherSerialRequests() throws Exception {
+		int size = 10000;
+
+		Concurrency executor = new Concurrency("testPublisherSerialRequests", 4);
+		AtomicInteger inRequest = new AtomicInteger();
+		AtomicInteger maxInRequest = new AtomicInteger();
+
+		try (SubmissionPublisher<Integer> source = new SubmissionPublisher<>()) {
+			// The requests of the processor are checked to be serial, as required by the Reactive Streams rule 2.7.
+			Flow.Publisher<Integer> checked = subscriber -> source.subscribe(new Flow.Subscriber<Integer>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscriber.onSubscribe(new Flow.Subscription() {
+						@Override
+						public void request(long n) {
+							maxInRequest.accumulateAndGet(inRequest.incrementAndGet(), Integer::max);
+							Thread.onSpinWait();
+							subscription.request(n);
+							inRequest.decrementAndGet();
+						}
+
+						@Override
+						public void cancel() {
+							subscription.cancel();
+						}
+					});
+				}
+
+				@Override
+				public void onNext(Integer item) {
+					subscriber.onNext(item);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					subscriber.onError(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					subscriber.onComplete();
+				}
+			});
+
+			Flow.Publisher<Long> results = executor.subscribe(checked, 10, 1, intSumOperator);
+			AtomicLong sum = new AtomicLong();
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			results.subscribe(new Flow.Subscriber<Long>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(Long item) {
+					sum.addAndGet(item);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					done.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					done.complete(null);
+				}
+			});
+
+			makeSequence(size).forEach(source::submit);
+			source.close();
+			done.get(1, TimeUnit.MINUTES);
+			assertEquals((long) size * (size + 1) / 2, sum.get());
+		}
+		assertEquals(1, maxInRequest.get(), "Concurrent requests to the subscription");
+	}
+
+	@Test
+	void testPipeline() throws Exception {
+		int size = 100000;
+		List<Integer> list = makeSequence(size);
+
+		MapRedOperator<Integer, Long> operator = MapRedPipeline.<Integer>from("pipeline")
+				.filter(x -> x % 2 == 0)
+				.map(x -> (long) x * 2)
+				.flatMap(x -> Stream.of(x, x))
+				.reduce(() -> 0L, (Long sum, Long x) -> sum + x, Long::sum);
+
+		long expected = list.stream().filter(x -> x % 2 == 0).mapToLong(x -> (long) x * 4).sum();
+
+		assertEquals(expected, operator.exec(list.stream()), "Sequential pipeline failed");
+
+		Concurrency executor = new Concurrency("testPipeline", 4);
+		assertEquals(expected, executor.parallel(list.stream(), 1000, operator), "Concurrent pipeline failed");
+
+		// A fused pipeline can still be shipped to another process.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(operator);
+		}
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			@SuppressWarnings("unchecked")
+			MapRedOperator<Integer, Long> copy = (MapRedOperator<Integer, Long>) ois.readObject();
+			assertEquals(expected, executor.parallel(list.stream(), 1000, copy), "Deserialized pipeline failed");
+		}
+
+		assertEquals(size / 2, MapRedPipeline.<Integer>from("even").filter(x -> x % 2 == 0).toList().exec(list.stream()).size());
+	}
+
+	@Test
+	void testResultCache() {
+		int size = 10000;
+		List<Integer> list = makeSequence(size);
+
+		MapRedCache cache = new MapRedCache(1000);
+		List<Object> reports = new ArrayList<>();
+
+		Concurrency executor = new Concurrency("testResultCache", 4);
+		executor.setResultCache(cache);
+		executor.setMonitorListener(reports::add);
+
+		long expected = (long) size * (size + 1) / 2;
+		assertEquals(expected, executor.parallel(list.stream(), 100, intSumOperator));
+
+		// Changing a single item only invalidates its chunk.
+		list.set(5000, 0);
+		assertEquals(expected - 5001, executor.parallel(list.stream(), 100, intSumOperator));
+
+		MapRedCache.Stats stats = cache.getStats();
+		assertEquals(99, stats.hits, "Unchanged chunks not reused");
+		assertEquals(101, stats.misses, "Unexpected chunk recomputations");
+		assertEquals(2, reports.size(), "Cache counters not reported");
+		_logger.info("{}", stats);
+	}
+
+	@Test
+	void testResultCacheFingerprints() {
+		MapRedCache cache = new MapRedCache(1000);
+
+		// "Aa" and "BB" share their hash code, but not their content.
+		assertNotEquals(cache.fingerprint(List.of("Aa")), cache.fingerprint(List.of("BB")));
+		assertEquals(cache.fingerprint(List.of("Aa")), cache.fingerprint(List.of(new String("Aa"))));
+		assertNotEquals(cache.fingerprint(List.of(1)), cache.fingerprint(List.of(1L)));
+
+		// Items with an identity hash code may change without changing their hash code, so they aren't cached.
+		StringBuilder item = new StringBuilder("a");
+		assertNotNull(cache.fingerprint(List.of(item)), "Char sequences fingerprinted from their content");
+		int[] array = { 1 };
+		assertNull(cache.fingerprint(List.of(array)), "Identity hash code used as a fingerprint");
+
+		MapRedOperator<int[], Integer> first = new MapRedOperator<>("first");
+		assertEquals(1, cache.get(first, List.of(array), () -> array[0]));
+		array[0] = 2;
+		assertEquals(2, cache.get(first, List.of(array), () -> array[0]), "Stale result of a modified item");
+		assertEquals(0, cache.size());
+
+		cache.setItemContent(a -> String.valueOf(((int[]) a)[0]));
+		assertNotNull(cache.fingerprint(List.of(array)));
+	}
+
+	@Test
+	void testWorkerAccumulators() {
+		int size = 100000;
+		List<Integer> list = makeSequence(size);
+
+		Concurrency executor = new Concurrency("testWorkerAccumulators", 4);
+		executor.setWorkerAccumulators(true);
+
+		assertEquals((long) size * (size + 1) / 2, executor.parallel(list.stream(), 10, intSumOperator));
+
+		// Mutable accumulators are shared by all the chunks of a worker.
+		List<Integer> all = executor.parallel(list.stream(), 10, MapRedOperator.maper("copy", null, (Integer x) -> x));
+		assertEquals(size, all.size());
+		assertEquals(list, all.stream().sorted().collect(Collectors.toList()));
+
+		executor.setOrdered(true);
+		assertThrows(IllegalStateException.class, () -> executor.parallel(list.stream(), 10, intSumOperator));
+	}
+
+	@Test
+	void testWorkerAccumulatorsAbort() {
+		AtomicReference<MapRedOperator<Integer, Long>> self = new AtomicReference<>();
+		MapRedOperator<Integer, Long> operator = new MapRedOperator<>("abortedSum", null, (Integer x) -> {
+			if (x == 1) {
+				// A worker ignoring interrupts, still running after the abort.
+				long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+				while (System.nanoTime() < end) {
+					Thread.onSpinWait();
+				}
+			} else if (x == 500) {
+				self.get().abort();
+			}
+			return Long.valueOf(x);
+		}, (Long prev, Long contrib) -> prev + contrib, () -> Long.valueOf(0));
+		self.set(operator);
+
+		Concurrency executor = new Concurrency("testWorkerAccumulatorsAbort", 4);
+		executor.setWorkerAccumulators(true);
+
+		// The accumulators of running workers aren't merged.
+		assertEquals(0L, executor.parallel(makeSequence(1000).stream(), 10, operator));
+	}
+
+	@Test
+	void testMetrics() throws Exception {
+		int size = 800;
+
+		ConcurrencyStats stats = new ConcurrencyStats("com.genielog.tests");
+		Concurrency executor = new Concurrency("testMetrics", 4);
+		executor.setMetrics(stats);
+
+		assertEquals((long) size * (size + 1) / 2, executor.parallel(makeSequence(size).stream(), 10, longOperator));
+
+		ConcurrencyStats.OperatorStats opStats = stats.get(longOperator.id);
+		assertEquals(1, opStats.getRuns());
+		assertEquals(size / 10, opStats.getChunks());
+		assertEquals(size, opStats.getItems());
+		assertTrue(opStats.getChunkLatencyP50Millis() >= 10 * 10 * 0.875, "Chunk latency too low " + opStats);
+		assertTrue(opStats.getChunkLatencyP50Millis() <= opStats.getChunkLatencyP99Millis());
+		assertTrue(opStats.getQueueDepthMax() > 0);
+		_logger.info("{}", opStats);
+
+		// The same statistics are published through JMX.
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.genielog.tests:type=Concurrency,operator=" + ObjectName.quote(longOperator.id));
+		assertEquals((long) size, server.getAttribute(name, "Items"));
+		stats.unregister();
+	}
 }
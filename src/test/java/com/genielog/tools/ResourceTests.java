@@ -0,0 +1,129 @@
+package com.genielog.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResourceTests extends BaseTest {
+
+	static final List<String> RESOURCES = List.of("/checkers/a.json", "/checkers/sub/b.json", "/checkers/c.txt",
+			"/other/d.json");
+
+	@Test
+	@Order(1)
+	@DisplayName("Index of the resources of a jar")
+	void test_JarIndex(@TempDir Path dir) throws IOException {
+
+		Path jar = dir.resolve("resources.jar");
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar.toFile()))) {
+			for (String name : RESOURCES) {
+				zip.putNextEntry(new ZipEntry(name.substring(1)));
+				zip.write(name.getBytes(StandardCharsets.UTF_8));
+				zip.closeEntry();
+			}
+		}
+
+		try (ResourceIndex index = ResourceIndex.of(jar)) {
+			assertSame(index, ResourceIndex.of(jar), "The index should be built once");
+			assertEquals(4, index.list().size());
+			assertEquals(List.of("/checkers/a.json", "/checkers/sub/b.json"), index.find("/checkers", ".*\\.json"));
+			assertEquals(List.of("/checkers/a.json"), index.glob("/checkers/*.json"));
+			assertEquals(List.of("/checkers/a.json", "/checkers/sub/b.json", "/other/d.json"), index.glob("/**.json"));
+			assertEquals(List.of("/checkers/c.txt"), index.regex(".*\\.txt"));
+
+			try (InputStream is = index.open("/checkers/sub/b.json")) {
+				assertEquals("/checkers/sub/b.json", new String(is.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			assertNull(index.open("/checkers/none.json"));
+
+			// Resources are stamped from the CRC and the size of their entry.
+			CRC32 crc = new CRC32();
+			crc.update("/checkers/a.json".getBytes(StandardCharsets.UTF_8));
+			assertEquals(Long.toHexString(crc.getValue()) + ":16", index.stamp("/checkers/a.json"));
+			assertNotEquals(index.stamp("/checkers/a.json"), index.stamp("/other/d.json"));
+			assertNull(index.stamp("/checkers/none.json"));
+
+			// Resource paths belong to the file system of the jar
+			Path path = index.getPath("/checkers/sub/b.json");
+			assertNotEquals(FileSystems.getDefault(), path.getFileSystem());
+			assertEquals("/checkers/sub/b.json", path.toString());
+			assertEquals("/checkers/sub/b.json", Files.readString(path));
+		}
+	}
+
+	@Test
+	@Order(2)
+	@DisplayName("Index of a classpath directory and its index file")
+	void test_DirectoryIndex(@TempDir Path dir) throws IOException {
+
+		for (String name : RESOURCES) {
+			Path file = dir.resolve(name.substring(1));
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, name);
+		}
+
+		ResourceIndex.writeIndexFile(dir);
+		assertTrue(Files.isRegularFile(dir.resolve(ResourceIndex.INDEX_FILE)));
+
+		// A resource not listed in the index file is ignored
+		Files.writeString(dir.resolve("checkers/e.json"), "not indexed");
+
+		try (ResourceIndex index = ResourceIndex.of(dir)) {
+			assertEquals(RESOURCES.stream().sorted().collect(Collectors.toList()), index.list());
+			assertFalse(index.contains("/checkers/e.json"));
+			try (InputStream is = index.open("/other/d.json")) {
+				assertEquals("/other/d.json", new String(is.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			assertEquals(dir.resolve("other/d.json"), index.getPath("/other/d.json"));
+		}
+	}
+
+	@Test
+	@Order(3)
+	@DisplayName("Index of a classpath directory built again when it changes")
+	void test_DirectoryChanges(@TempDir Path dir) throws IOException {
+
+		for (String name : RESOURCES) {
+			Path file = dir.resolve(name.substring(1));
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, name);
+		}
+
+		ResourceIndex index = ResourceIndex.of(dir);
+		assertEquals(4, index.list().size());
+		assertSame(index, ResourceIndex.of(dir), "An unchanged directory should not be indexed again");
+
+		// A new resource in a sub-directory changes the time of this sub-directory only
+		Path added = dir.resolve("checkers/sub/e.json");
+		Files.writeString(added, "added");
+		Files.setLastModifiedTime(added.getParent(), FileTime.fromMillis(System.currentTimeMillis() + 2000));
+
+		try (ResourceIndex changed = ResourceIndex.of(dir)) {
+			assertNotSame(index, changed);
+			assertTrue(changed.contains("/checkers/sub/e.json"));
+		}
+	}
+}